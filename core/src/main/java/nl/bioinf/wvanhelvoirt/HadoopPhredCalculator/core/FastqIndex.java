@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FastqIndex
+ *
+ * This class holds a summary index of a fastq file. The file is divided in chunks of a fixed amount of records, or
+ * less when a chunk reaches MAX_CHUNK_BYTES, and for each chunk the byte offset, the amount of records and a
+ * QualityProfile with histograms are kept. The profiles are kept in their compact binary form and only deserialized
+ * when a query merges them, so a large index takes little memory. A profile of a range of records is made by merging
+ * the profiles of the chunks inside the range, only the chunks at the boundaries of the range are read from the fastq
+ * file again. The length and modification time of the fastq file tell whether the index is still current.
+ *
+ * @author Wout van Helvoirt
+ */
+public class FastqIndex {
+
+    /** Extension of an index stored next to its fastq file. */
+    public static final String EXTENSION = ".phredidx";
+    /** Magic bytes at the start of the binary form. */
+    private static final byte[] MAGIC = {'P', 'H', 'I', 'X'};
+    /** Version of the binary form. */
+    private static final int VERSION = 3;
+    /** Size in bytes after which a chunk is closed, so a boundary chunk always fits in one buffer. */
+    public static final int MAX_CHUNK_BYTES = 1 << 30;
+    /** Size of the buffer used to read the fastq file. */
+    private static final int BUFFER_SIZE = 65536;
+
+    /** Base ascii value for phred score correcting. */
+    private final int asciiBase;
+    /** Amount of records per chunk. */
+    private final int chunkRecords;
+    /** Size in bytes of the fastq file the index was built from. */
+    private long sourceLength;
+    /** Modification time of the fastq file the index was built from. */
+    private long sourceModificationTime;
+    /** Bytes of the fastq file covered by the chunks, an incomplete last record is not covered. */
+    private long indexedLength;
+    /** Byte offset of each chunk. */
+    private final List<Long> offsets = new ArrayList<>();
+    /** Amount of records of each chunk. */
+    private final List<Long> records = new ArrayList<>();
+    /** QualityProfile of each chunk in its binary form. */
+    private final List<byte[]> profiles = new ArrayList<>();
+
+    /**
+     * Creates an empty index.
+     *
+     * @param asciiBase    Base ascii value for phred score correcting.
+     * @param chunkRecords Amount of records per chunk.
+     */
+    private FastqIndex(int asciiBase, int chunkRecords) {
+        this.asciiBase = asciiBase;
+        this.chunkRecords = chunkRecords;
+    }
+
+    /**
+     * Builds the index of a fastq file in one pass, the channel is not closed.
+     *
+     * @param fastq            The channel with the fastq file from its start.
+     * @param modificationTime The modification time of the fastq file, stored to detect changes.
+     * @param asciiBase        Base ascii value for phred score correcting.
+     * @param chunkRecords     Amount of records per chunk.
+     * @return FastqIndex of the file.
+     * @throws IOException When the channel can not be read.
+     */
+    public static FastqIndex build(ReadableByteChannel fastq, long modificationTime, int asciiBase, int chunkRecords)
+            throws IOException {
+
+        return build(fastq, modificationTime, asciiBase, chunkRecords, MAX_CHUNK_BYTES);
+    }
+
+    /**
+     * Builds the index of a fastq file in one pass with a given maximum chunk size, the channel is not closed.
+     *
+     * @param fastq            The channel with the fastq file from its start.
+     * @param modificationTime The modification time of the fastq file, stored to detect changes.
+     * @param asciiBase        Base ascii value for phred score correcting.
+     * @param chunkRecords     Amount of records per chunk.
+     * @param maxChunkBytes    Size in bytes after which a chunk is closed.
+     * @return FastqIndex of the file.
+     * @throws IOException When the channel can not be read.
+     */
+    static FastqIndex build(ReadableByteChannel fastq, long modificationTime, int asciiBase, int chunkRecords,
+                            long maxChunkBytes)
+            throws IOException {
+
+        if (chunkRecords < 1) {
+            throw new IllegalArgumentException("The amount of records per chunk must be at least 1");
+        }
+        FastqIndex index = new FastqIndex(asciiBase, chunkRecords);
+        index.sourceModificationTime = modificationTime;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        QualityProfile chunk = new QualityProfile(asciiBase, true);
+        long chunkStart = 0;
+        long chunkCount = 0;
+        long consumed = 0;
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            int read = fastq.read(buffer);
+            endOfInput = read < 0;
+            index.sourceLength += Math.max(read, 0);
+            buffer.flip();
+
+            // Parse up to the end of the chunk, close it and continue with the next one. A chunk is closed early once
+            // it holds more than the maximum amount of bytes, which it exceeds by at most one buffer.
+            while (true) {
+                int start = buffer.position();
+                chunkCount += chunk.parse(buffer, endOfInput, chunkRecords - chunkCount);
+                consumed += buffer.position() - start;
+                if (chunkCount < chunkRecords && (chunkCount == 0 || consumed - chunkStart < maxChunkBytes)) {
+                    break;
+                }
+                index.addChunk(chunkStart, chunkCount, chunk.serialize());
+                chunk = new QualityProfile(asciiBase, true);
+                chunkStart = consumed;
+                chunkCount = 0;
+            }
+            buffer.compact();
+
+            // Grow the buffer if a single record does not fit.
+            if (!buffer.hasRemaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+        if (chunkCount > 0) {
+            index.addChunk(chunkStart, chunkCount, chunk.serialize());
+        }
+        index.indexedLength = consumed;
+        return index;
+    }
+
+    /**
+     * Adds a chunk to the end of the index.
+     *
+     * @param offset  The byte offset of the chunk.
+     * @param count   The amount of records of the chunk.
+     * @param profile The QualityProfile of the chunk in its binary form.
+     */
+    private void addChunk(long offset, long count, byte[] profile) {
+        this.offsets.add(offset);
+        this.records.add(count);
+        this.profiles.add(profile);
+    }
+
+    /**
+     * Makes the profile of a range of records, counting from 0 and including records of which the lines differ in
+     * length. Whole chunks come from the index, the boundary chunks are read with the ChunkReader.
+     *
+     * @param first  The first record of the range.
+     * @param end    The record after the range, clipped to the amount of records.
+     * @param reader The ChunkReader reading the fastq file.
+     * @return QualityProfile with histograms of the range.
+     * @throws IOException When a boundary chunk is too large or can not be read.
+     */
+    public QualityProfile query(long first, long end, ChunkReader reader)
+            throws IOException {
+
+        QualityProfile profile = new QualityProfile(this.asciiBase, true);
+        long chunkFirst = 0;
+        for (int i = 0; i < this.getChunks() && chunkFirst < end; i++) {
+            long chunkEnd = chunkFirst + this.records.get(i);
+            long from = Math.max(first, chunkFirst);
+            long to = Math.min(end, chunkEnd);
+            if (from == chunkFirst && to == chunkEnd) {
+                profile.merge(this.getProfile(i));
+            } else if (from < to) {
+
+                // Skip the records before the range and add the records in it.
+                long chunkLength = (i + 1 < this.getChunks() ? this.offsets.get(i + 1) : this.indexedLength)
+                        - this.offsets.get(i);
+                if (chunkLength > Integer.MAX_VALUE) {
+                    throw new IOException("Chunk " + i + " of " + chunkLength + " bytes is too large to read at once, "
+                            + "build the index again");
+                }
+                ByteBuffer chunk = reader.read(this.offsets.get(i), (int) chunkLength);
+                new QualityProfile(this.asciiBase).parse(chunk, true, from - chunkFirst);
+                profile.parse(chunk, true, to - from);
+            }
+            chunkFirst = chunkEnd;
+        }
+        return profile;
+    }
+
+    /**
+     * Returns the amount of chunks.
+     *
+     * @return int with the amount of chunks.
+     */
+    public int getChunks() {
+        return this.offsets.size();
+    }
+
+    /**
+     * Returns the byte offset of a chunk.
+     *
+     * @param chunk The chunk, starting at 0.
+     * @return long with the byte offset.
+     */
+    public long getOffset(int chunk) {
+        return this.offsets.get(chunk);
+    }
+
+    /**
+     * Returns the amount of records of a chunk.
+     *
+     * @param chunk The chunk, starting at 0.
+     * @return long with the amount of records.
+     */
+    public long getRecords(int chunk) {
+        return this.records.get(chunk);
+    }
+
+    /**
+     * Returns the QualityProfile of a chunk, deserialized from its binary form on every call.
+     *
+     * @param chunk The chunk, starting at 0.
+     * @return QualityProfile with histograms of the chunk.
+     * @throws IOException When the profile can not be deserialized.
+     */
+    public QualityProfile getProfile(int chunk)
+            throws IOException {
+
+        return QualityProfile.deserialize(this.profiles.get(chunk));
+    }
+
+    /**
+     * Returns the amount of records of all chunks.
+     *
+     * @return long with the amount of records.
+     */
+    public long getTotalRecords() {
+        long total = 0;
+        for (long count : this.records) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the size in bytes of the fastq file the index was built from.
+     *
+     * @return long with the size in bytes.
+     */
+    public long getSourceLength() {
+        return this.sourceLength;
+    }
+
+    /**
+     * Returns the modification time of the fastq file the index was built from.
+     *
+     * @return long with the modification time.
+     */
+    public long getSourceModificationTime() {
+        return this.sourceModificationTime;
+    }
+
+    /**
+     * Tells whether the index still belongs to a fastq file, by comparing its length and modification time.
+     *
+     * @param length           The size in bytes of the fastq file.
+     * @param modificationTime The modification time of the fastq file.
+     * @return boolean true if the index is current.
+     */
+    public boolean isCurrent(long length, long modificationTime) {
+        return this.sourceLength == length && this.sourceModificationTime == modificationTime;
+    }
+
+    /**
+     * Returns the amount of records per chunk.
+     *
+     * @return int with the amount of records.
+     */
+    public int getChunkRecords() {
+        return this.chunkRecords;
+    }
+
+    /**
+     * Writes the index in its binary form.
+     *
+     * @param out The DataOutput to write to.
+     * @throws IOException When the index can not be written.
+     */
+    public void write(DataOutput out)
+            throws IOException {
+
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        QualityProfile.writeVarLong(out, this.asciiBase);
+        QualityProfile.writeVarLong(out, this.chunkRecords);
+        QualityProfile.writeVarLong(out, this.sourceLength);
+        QualityProfile.writeVarLong(out, this.sourceModificationTime);
+        QualityProfile.writeVarLong(out, this.indexedLength);
+        QualityProfile.writeVarLong(out, this.getChunks());
+
+        // Offsets are written as the difference with the previous chunk, profiles with their length in front.
+        long previous = 0;
+        for (int i = 0; i < this.getChunks(); i++) {
+            QualityProfile.writeVarLong(out, this.offsets.get(i) - previous);
+            QualityProfile.writeVarLong(out, this.records.get(i));
+            QualityProfile.writeVarLong(out, this.profiles.get(i).length);
+            out.write(this.profiles.get(i));
+            previous = this.offsets.get(i);
+        }
+    }
+
+    /**
+     * Reads an index from its binary form.
+     *
+     * @param in The DataInput to read from.
+     * @return FastqIndex that was read.
+     * @throws IOException When the index can not be read or has an unknown version.
+     */
+    public static FastqIndex read(DataInput in)
+            throws IOException {
+
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a FastqIndex");
+            }
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported FastqIndex version " + version);
+        }
+        FastqIndex index = new FastqIndex((int) QualityProfile.readVarLong(in), (int) QualityProfile.readVarLong(in));
+        index.sourceLength = QualityProfile.readVarLong(in);
+        index.sourceModificationTime = QualityProfile.readVarLong(in);
+        index.indexedLength = QualityProfile.readVarLong(in);
+        long chunks = QualityProfile.readVarLong(in);
+        long offset = 0;
+        for (long i = 0; i < chunks; i++) {
+            offset += QualityProfile.readVarLong(in);
+            long count = QualityProfile.readVarLong(in);
+            long profileLength = QualityProfile.readVarLong(in);
+            if (profileLength > Integer.MAX_VALUE) {
+                throw new IOException("Profile of chunk " + i + " has an invalid length " + profileLength);
+            }
+            byte[] profile = new byte[(int) profileLength];
+            in.readFully(profile);
+            index.addChunk(offset, count, profile);
+        }
+        return index;
+    }
+
+    /**
+     * ChunkReader
+     *
+     * Reads a byte range of the fastq file an index belongs to.
+     */
+    public interface ChunkReader {
+
+        /**
+         * Reads a byte range of the fastq file.
+         *
+         * @param offset The byte offset of the range.
+         * @param length The length of the range.
+         * @return ByteBuffer with the bytes of the range between its position and limit.
+         * @throws IOException When the range can not be read.
+         */
+        ByteBuffer read(long offset, int length)
+                throws IOException;
+    }
+}
@@ -0,0 +1,562 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * QualityProfile
+ *
+ * This class accumulates the phred score sums and counts per base position of fastq reads, without any Hadoop
+ * dependency, so it can be embedded in any JVM process. Reads can be added one at a time or parsed from byte buffers,
+ * InputStreams and channels. Profiles of different parts of the data can be merged and exchanged in a compact binary
+ * form. Reads of which the base line and phred line differ in length are skipped. Optionally a histogram of the phred
+ * scores is kept per base position, for quartiles.
+ *
+ * @author Wout van Helvoirt
+ */
+public class QualityProfile {
+
+    /** Highest phred score kept apart in the histograms, higher scores are counted as this score. */
+    public static final int MAX_SCORE = 93;
+    /** Version of the binary form. */
+    private static final int VERSION = 2;
+    /** Size of the buffer used to read streams. */
+    private static final int BUFFER_SIZE = 65536;
+
+    /** Base ascii value for phred score correcting. */
+    private final int asciiBase;
+    /** Phred score sums per base. */
+    private long[] sums = new long[0];
+    /** Amount of phred scores per base. */
+    private long[] counts = new long[0];
+    /** Phred score histograms per base, null when not kept. */
+    private long[][] histograms;
+    /** Amount of base positions in use. */
+    private int length;
+    /** Amount of added reads. */
+    private long reads;
+
+    /**
+     * Creates an empty profile.
+     *
+     * @param asciiBase Base ascii value for phred score correcting, 33 or 64.
+     */
+    public QualityProfile(int asciiBase) {
+        this(asciiBase, false);
+    }
+
+    /**
+     * Creates an empty profile.
+     *
+     * @param asciiBase  Base ascii value for phred score correcting, 33 or 64.
+     * @param histograms Whether a histogram of the phred scores is kept per base position.
+     */
+    public QualityProfile(int asciiBase, boolean histograms) {
+        this.asciiBase = asciiBase;
+        if (histograms) {
+            this.histograms = new long[0][];
+        }
+    }
+
+    /**
+     * Adds the phred scores of one read.
+     *
+     * @param sequence The base line of the read.
+     * @param quality  The phred line of the read.
+     * @return boolean whether the read was added, false if the lines differ in length.
+     */
+    public boolean addRead(CharSequence sequence, CharSequence quality) {
+        if (sequence.length() != quality.length()) {
+            return false;
+        }
+        this.ensureLength(quality.length());
+        for (int i = 0; i < quality.length(); i++) {
+            this.addScore(i, quality.charAt(i) - this.asciiBase);
+        }
+        this.reads++;
+        return true;
+    }
+
+    /**
+     * Adds an already summed phred score sum and count of one base position, only for profiles without histograms.
+     *
+     * @param position The base position, starting at 0.
+     * @param sum      The phred score sum.
+     * @param count    The amount of phred scores.
+     */
+    public void addPosition(int position, long sum, long count) {
+        if (this.histograms != null) {
+            throw new IllegalStateException("A sum and count can not be added to the histograms");
+        }
+        this.ensureLength(position + 1);
+        this.sums[position] += sum;
+        this.counts[position] += count;
+    }
+
+    /**
+     * Adds the complete fastq records between the position and the limit of a buffer, which holds the end of the
+     * input. A last record without trailing newline is added once its phred line is as long as its base line. The
+     * position is moved past the last added record, an incomplete record is left in the buffer.
+     *
+     * @param fastq The buffer with fastq records.
+     * @return int with the amount of bytes consumed.
+     */
+    public int add(ByteBuffer fastq) {
+        int start = fastq.position();
+        this.parse(fastq, true, Long.MAX_VALUE);
+        return fastq.position() - start;
+    }
+
+    /**
+     * Adds all complete fastq records of an InputStream, the stream is not closed.
+     *
+     * @param fastq The InputStream with fastq records.
+     * @return long with the amount of bytes consumed, less than the stream size if it ends in an incomplete record.
+     * @throws IOException When the stream can not be read.
+     */
+    public long add(InputStream fastq)
+            throws IOException {
+
+        return this.add(Channels.newChannel(fastq));
+    }
+
+    /**
+     * Adds all complete fastq records of a channel, the channel is not closed.
+     *
+     * @param fastq The channel with fastq records.
+     * @return long with the amount of bytes consumed, less than the channel size if it ends in an incomplete record.
+     * @throws IOException When the channel can not be read.
+     */
+    public long add(ReadableByteChannel fastq)
+            throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long consumed = 0;
+        while (fastq.read(buffer) >= 0) {
+            buffer.flip();
+            this.parse(buffer, false, Long.MAX_VALUE);
+            consumed += buffer.position();
+            buffer.compact();
+
+            // Grow the buffer if a single record does not fit.
+            if (!buffer.hasRemaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+        buffer.flip();
+        this.parse(buffer, true, Long.MAX_VALUE);
+        return consumed + buffer.position();
+    }
+
+    /**
+     * Adds the phred sums, counts and histograms of another profile to this one.
+     *
+     * @param other The QualityProfile to merge.
+     */
+    public void merge(QualityProfile other) {
+        if (this.histograms != null && other.histograms == null) {
+            throw new IllegalArgumentException("A profile without histograms can not be merged into one with them");
+        }
+        this.ensureLength(other.length);
+        for (int i = 0; i < other.length; i++) {
+            this.sums[i] += other.sums[i];
+            this.counts[i] += other.counts[i];
+            if (this.histograms != null) {
+                for (int score = 0; score <= MAX_SCORE; score++) {
+                    this.histograms[i][score] += other.histograms[i][score];
+                }
+            }
+        }
+        this.reads += other.reads;
+    }
+
+    /**
+     * Returns the base ascii value used for phred score correcting.
+     *
+     * @return int with the base ascii value.
+     */
+    public int getAsciiBase() {
+        return this.asciiBase;
+    }
+
+    /**
+     * Returns the amount of base positions, the length of the longest added read.
+     *
+     * @return int with the amount of base positions.
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Returns the amount of added reads.
+     *
+     * @return long with the amount of reads.
+     */
+    public long getReads() {
+        return this.reads;
+    }
+
+    /**
+     * Returns the phred score sum of a base position.
+     *
+     * @param position The base position, starting at 0.
+     * @return long with the phred score sum.
+     */
+    public long getSum(int position) {
+        return this.sums[position];
+    }
+
+    /**
+     * Returns the amount of phred scores of a base position.
+     *
+     * @param position The base position, starting at 0.
+     * @return long with the amount of phred scores.
+     */
+    public long getCount(int position) {
+        return this.counts[position];
+    }
+
+    /**
+     * Returns the average phred score of a base position.
+     *
+     * @param position The base position, starting at 0.
+     * @return float with the average phred score.
+     */
+    public float getAverage(int position) {
+        return (float) this.sums[position] / this.counts[position];
+    }
+
+    /**
+     * Returns whether a histogram of the phred scores is kept per base position.
+     *
+     * @return boolean whether there are histograms.
+     */
+    public boolean hasHistograms() {
+        return this.histograms != null;
+    }
+
+    /**
+     * Returns the amount of times a phred score occurred at a base position.
+     *
+     * @param position The base position, starting at 0.
+     * @param score    The phred score, from 0 up to MAX_SCORE.
+     * @return long with the amount of times.
+     */
+    public long getScoreCount(int position, int score) {
+        if (this.histograms == null) {
+            throw new IllegalStateException("This profile keeps no histograms");
+        }
+        return this.histograms[position][score];
+    }
+
+    /**
+     * Returns the phred score below which the given fraction of the scores of a base position lies, such as 0.5 for
+     * the median.
+     *
+     * @param position The base position, starting at 0.
+     * @param fraction The fraction of the scores, from 0 up to 1.
+     * @return int with the phred score.
+     */
+    public int getQuantile(int position, double fraction) {
+        long rank = Math.max(1, (long) Math.ceil(fraction * this.counts[position]));
+        long seen = 0;
+        for (int score = 0; score < MAX_SCORE; score++) {
+            seen += this.getScoreCount(position, score);
+            if (seen >= rank) {
+                return score;
+            }
+        }
+        return MAX_SCORE;
+    }
+
+    /**
+     * Writes the profile in its binary form.
+     *
+     * @param out The DataOutput to write to.
+     * @throws IOException When the profile can not be written.
+     */
+    public void serialize(DataOutput out)
+            throws IOException {
+
+        out.writeByte(VERSION);
+        writeVarLong(out, this.asciiBase);
+        writeVarLong(out, this.reads);
+        writeVarLong(out, this.length);
+        out.writeBoolean(this.histograms != null);
+        for (int i = 0; i < this.length; i++) {
+
+            // Zigzag the sum, a wrong ascii base gives negative sums.
+            writeVarLong(out, (this.sums[i] << 1) ^ (this.sums[i] >> 63));
+            writeVarLong(out, this.counts[i]);
+            if (this.histograms != null) {
+
+                // Only the occurring scores are written, as 'score, count' pairs.
+                int scores = 0;
+                for (long count : this.histograms[i]) {
+                    scores += count > 0 ? 1 : 0;
+                }
+                writeVarLong(out, scores);
+                for (int score = 0; score <= MAX_SCORE; score++) {
+                    if (this.histograms[i][score] > 0) {
+                        writeVarLong(out, score);
+                        writeVarLong(out, this.histograms[i][score]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the profile in its binary form.
+     *
+     * @return byte array with the binary form.
+     */
+    public byte[] serialize() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            this.serialize(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory failed", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a profile from its binary form.
+     *
+     * @param in The DataInput to read from.
+     * @return QualityProfile that was read.
+     * @throws IOException When the profile can not be read or has an unknown version.
+     */
+    public static QualityProfile deserialize(DataInput in)
+            throws IOException {
+
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported QualityProfile version " + version);
+        }
+        int asciiBase = (int) readVarLong(in);
+        long reads = readVarLong(in);
+        int length = (int) readVarLong(in);
+        QualityProfile profile = new QualityProfile(asciiBase, in.readBoolean());
+        profile.reads = reads;
+        profile.ensureLength(length);
+        for (int i = 0; i < profile.length; i++) {
+            long zigzag = readVarLong(in);
+            profile.sums[i] = (zigzag >>> 1) ^ -(zigzag & 1);
+            profile.counts[i] = readVarLong(in);
+            if (profile.histograms != null) {
+                long scores = readVarLong(in);
+                for (long j = 0; j < scores; j++) {
+                    int score = (int) readVarLong(in);
+                    if (score > MAX_SCORE) {
+                        throw new IOException("Phred score " + score + " out of range");
+                    }
+                    profile.histograms[i][score] = readVarLong(in);
+                }
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Reads a profile from its binary form.
+     *
+     * @param bytes The byte array with the binary form.
+     * @return QualityProfile that was read.
+     * @throws IOException When the bytes are not a profile.
+     */
+    public static QualityProfile deserialize(byte[] bytes)
+            throws IOException {
+
+        return deserialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Parses the complete fastq records of a buffer and moves its position past them. Empty lines before records are
+     * skipped. Records of which the lines differ in length are consumed and counted, but not added.
+     *
+     * @param buffer     The buffer with fastq records.
+     * @param endOfInput Whether no more bytes follow the buffer.
+     * @param maxRecords The maximum amount of records to parse.
+     * @return int with the amount of records consumed.
+     */
+    int parse(ByteBuffer buffer, boolean endOfInput, long maxRecords) {
+        int limit = buffer.limit();
+        int position = buffer.position();
+        int records = 0;
+        while (records < maxRecords) {
+            while (position < limit && (buffer.get(position) == '\n' || buffer.get(position) == '\r')) {
+                position++;
+            }
+            if (position == limit) {
+                break;
+            }
+
+            // Find the ends of the header, base, plus and phred lines.
+            int headerEnd = lineEnd(buffer, position, limit);
+            int sequenceEnd = headerEnd < 0 ? -1 : lineEnd(buffer, headerEnd + 1, limit);
+            int plusEnd = sequenceEnd < 0 ? -1 : lineEnd(buffer, sequenceEnd + 1, limit);
+            if (plusEnd < 0) {
+                break;
+            }
+            int sequenceLength = trim(buffer, headerEnd + 1, sequenceEnd) - headerEnd - 1;
+            int qualityEnd = lineEnd(buffer, plusEnd + 1, limit);
+            int next = qualityEnd + 1;
+            if (qualityEnd < 0) {
+
+                // An unterminated phred line is only complete at the end of the input and once long enough.
+                qualityEnd = limit;
+                next = limit;
+                if (!endOfInput || trim(buffer, plusEnd + 1, limit) - plusEnd - 1 < sequenceLength) {
+                    break;
+                }
+            }
+            int qualityLength = trim(buffer, plusEnd + 1, qualityEnd) - plusEnd - 1;
+            if (qualityLength == sequenceLength) {
+                this.ensureLength(qualityLength);
+                for (int i = 0; i < qualityLength; i++) {
+                    this.addScore(i, (buffer.get(plusEnd + 1 + i) & 0xff) - this.asciiBase);
+                }
+                this.reads++;
+            }
+            position = next;
+            records++;
+        }
+        buffer.position(position);
+        return records;
+    }
+
+    /**
+     * Adds one phred score of a base position, the position must be in use.
+     *
+     * @param position The base position, starting at 0.
+     * @param score    The phred score.
+     */
+    private void addScore(int position, int score) {
+        this.sums[position] += score;
+        this.counts[position]++;
+        if (this.histograms != null) {
+            this.histograms[position][Math.max(0, Math.min(score, MAX_SCORE))]++;
+        }
+    }
+
+    /**
+     * Returns the index of the next newline.
+     *
+     * @param buffer The buffer to search.
+     * @param from   The index to start at.
+     * @param limit  The index to stop at.
+     * @return int with the index of the newline, -1 if there is none.
+     */
+    private static int lineEnd(ByteBuffer buffer, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the end of a line without a trailing carriage return.
+     *
+     * @param buffer The buffer with the line.
+     * @param start  The index of the first character.
+     * @param end    The index after the last character.
+     * @return int with the end of the line.
+     */
+    private static int trim(ByteBuffer buffer, int start, int end) {
+        return end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+    }
+
+    /**
+     * Grows the sums and counts to at least the given amount of base positions.
+     *
+     * @param positions The amount of base positions needed.
+     */
+    private void ensureLength(int positions) {
+        if (this.sums.length < positions) {
+            int capacity = Math.max(positions, this.sums.length * 2);
+            this.sums = Arrays.copyOf(this.sums, capacity);
+            this.counts = Arrays.copyOf(this.counts, capacity);
+            if (this.histograms != null) {
+                int grown = this.histograms.length;
+                this.histograms = Arrays.copyOf(this.histograms, capacity);
+                for (int i = grown; i < capacity; i++) {
+                    this.histograms[i] = new long[MAX_SCORE + 1];
+                }
+            }
+        }
+        this.length = Math.max(this.length, positions);
+    }
+
+    /**
+     * Writes an unsigned variable length long, 7 bits per byte.
+     *
+     * @param out   The DataOutput to write to.
+     * @param value The value to write.
+     * @throws IOException When the value can not be written.
+     */
+    static void writeVarLong(DataOutput out, long value)
+            throws IOException {
+
+        long remaining = value;
+        while ((remaining & ~0x7fL) != 0) {
+            out.writeByte((int) (remaining & 0x7f) | 0x80);
+            remaining >>>= 7;
+        }
+        out.writeByte((int) remaining);
+    }
+
+    /**
+     * Reads an unsigned variable length long, 7 bits per byte.
+     *
+     * @param in The DataInput to read from.
+     * @return long that was read.
+     * @throws IOException When the value can not be read.
+     */
+    static long readVarLong(DataInput in)
+            throws IOException {
+
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length long");
+    }
+}
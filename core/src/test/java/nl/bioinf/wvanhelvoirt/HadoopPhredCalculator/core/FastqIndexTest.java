@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FastqIndexTest
+ *
+ * Tests the FastqIndex queries against profiles made directly from the records of the range.
+ *
+ * @author Wout van Helvoirt
+ */
+public class FastqIndexTest {
+
+    /** Modification time of the test file. */
+    private static final long MODIFIED = 1476871200000L;
+
+    /**
+     * Returns fastq records of different lengths and qualities, some with carriage returns.
+     *
+     * @param count The amount of records.
+     * @return List with one String per record.
+     */
+    private static List<String> records(int count) {
+        List<String> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int length = 3 + i % 4;
+            StringBuilder sequence = new StringBuilder();
+            StringBuilder quality = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                sequence.append("ACGT".charAt((i + j) % 4));
+                quality.append((char) ('!' + (i * 7 + j * 3) % 41));
+            }
+            String newline = i % 5 == 0 ? "\r\n" : "\n";
+            records.add("@r" + i + newline + sequence + newline + "+" + newline + quality + newline);
+        }
+        return records;
+    }
+
+    /**
+     * Joins the records from first up to end.
+     *
+     * @param records The records.
+     * @param first   The first record.
+     * @param end     The record after the last one.
+     * @return byte array with the records.
+     */
+    private static byte[] join(List<String> records, int first, int end) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = first; i < end; i++) {
+            joined.append(records.get(i));
+        }
+        return joined.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Builds the index of a fastq file.
+     *
+     * @param fastq         The fastq file.
+     * @param chunkRecords  Amount of records per chunk.
+     * @param maxChunkBytes Size in bytes after which a chunk is closed.
+     * @return FastqIndex of the file.
+     * @throws IOException When the file can not be read.
+     */
+    private static FastqIndex build(byte[] fastq, int chunkRecords, long maxChunkBytes)
+            throws IOException {
+
+        return FastqIndex.build(Channels.newChannel(new ByteArrayInputStream(fastq)), MODIFIED, 33, chunkRecords,
+                maxChunkBytes);
+    }
+
+    /**
+     * A ChunkReader over a byte array that counts the bytes it reads.
+     */
+    private static final class ArrayChunkReader implements FastqIndex.ChunkReader {
+
+        /** The fastq file. */
+        private final byte[] fastq;
+        /** Amount of bytes read. */
+        private long bytesRead;
+
+        /**
+         * Constructor that sets the fastq file.
+         *
+         * @param fastq The fastq file.
+         */
+        private ArrayChunkReader(byte[] fastq) {
+            this.fastq = fastq;
+        }
+
+        /**
+         * Override method that returns a copy of the byte range.
+         *
+         * @param offset The byte offset of the range.
+         * @param length The length of the range.
+         * @return ByteBuffer with the bytes of the range.
+         */
+        @Override
+        public ByteBuffer read(long offset, int length) {
+            this.bytesRead += length;
+            byte[] chunk = new byte[length];
+            System.arraycopy(this.fastq, (int) offset, chunk, 0, length);
+            return ByteBuffer.wrap(chunk);
+        }
+    }
+
+    /**
+     * Every range, including ranges within one chunk and ranges starting or ending inside a chunk, gives the profile
+     * of its records.
+     *
+     * @throws IOException When a chunk can not be read.
+     */
+    @Test
+    public void queriesEveryRange()
+            throws IOException {
+
+        List<String> records = records(17);
+        byte[] fastq = join(records, 0, records.size());
+        FastqIndex index = build(fastq, 4, FastqIndex.MAX_CHUNK_BYTES);
+        assertEquals(5, index.getChunks());
+        assertEquals(17, index.getTotalRecords());
+        for (int first = 0; first <= records.size(); first++) {
+            for (int end = first; end <= records.size() + 1; end++) {
+                QualityProfile expected = new QualityProfile(33, true);
+                expected.add(ByteBuffer.wrap(join(records, first, Math.min(end, records.size()))));
+                assertArrayEquals("Range " + first + "-" + end, expected.serialize(),
+                        index.query(first, end, new ArrayChunkReader(fastq)).serialize());
+            }
+        }
+    }
+
+    /**
+     * Whole chunks come from the index without reading the file.
+     *
+     * @throws IOException When a chunk can not be read.
+     */
+    @Test
+    public void wholeChunksAreNotRead()
+            throws IOException {
+
+        List<String> records = records(12);
+        byte[] fastq = join(records, 0, records.size());
+        ArrayChunkReader reader = new ArrayChunkReader(fastq);
+        build(fastq, 4, FastqIndex.MAX_CHUNK_BYTES).query(4, 12, reader);
+        assertEquals(0, reader.bytesRead);
+    }
+
+    /**
+     * An incomplete record at the end of the file is not indexed.
+     *
+     * @throws IOException When a chunk can not be read.
+     */
+    @Test
+    public void skipsIncompleteLastRecord()
+            throws IOException {
+
+        List<String> records = records(6);
+        byte[] complete = join(records, 0, records.size());
+        byte[] fastq = (new String(complete, StandardCharsets.US_ASCII) + "@r6\nACG\n+\nII")
+                .getBytes(StandardCharsets.US_ASCII);
+        FastqIndex index = build(fastq, 4, FastqIndex.MAX_CHUNK_BYTES);
+        assertEquals(6, index.getTotalRecords());
+        assertEquals(fastq.length, index.getSourceLength());
+        QualityProfile expected = new QualityProfile(33, true);
+        expected.add(ByteBuffer.wrap(join(records, 3, 6)));
+        assertArrayEquals(expected.serialize(), index.query(3, 10, new ArrayChunkReader(fastq)).serialize());
+    }
+
+    /**
+     * Chunks are closed early once they reach the maximum amount of bytes, exceeding it by at most one read buffer,
+     * and queries stay correct.
+     *
+     * @throws IOException When a chunk can not be read.
+     */
+    @Test
+    public void closesLargeChunks()
+            throws IOException {
+
+        List<String> records = records(40000);
+        byte[] fastq = join(records, 0, records.size());
+        FastqIndex index = build(fastq, 1000000, 100000);
+        assertTrue(index.getChunks() > 2);
+        for (int i = 1; i < index.getChunks(); i++) {
+            assertTrue(index.getOffset(i) - index.getOffset(i - 1) < 100000 + 65536);
+        }
+        QualityProfile expected = new QualityProfile(33, true);
+        expected.add(ByteBuffer.wrap(join(records, 1234, 38765)));
+        assertArrayEquals(expected.serialize(), index.query(1234, 38765, new ArrayChunkReader(fastq)).serialize());
+    }
+
+    /**
+     * The binary form keeps the chunks and the source length and modification time.
+     *
+     * @throws IOException When the index can not be written or read.
+     */
+    @Test
+    public void writeReadRoundTrip()
+            throws IOException {
+
+        List<String> records = records(10);
+        byte[] fastq = join(records, 0, records.size());
+        FastqIndex index = build(fastq, 3, FastqIndex.MAX_CHUNK_BYTES);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bytes));
+        FastqIndex copy = FastqIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(index.getChunks(), copy.getChunks());
+        assertEquals(3, copy.getChunkRecords());
+        assertEquals(MODIFIED, copy.getSourceModificationTime());
+        for (int i = 0; i < index.getChunks(); i++) {
+            assertEquals(index.getOffset(i), copy.getOffset(i));
+            assertEquals(index.getRecords(i), copy.getRecords(i));
+            assertArrayEquals(index.getProfile(i).serialize(), copy.getProfile(i).serialize());
+        }
+        assertArrayEquals(index.query(2, 8, new ArrayChunkReader(fastq)).serialize(),
+                copy.query(2, 8, new ArrayChunkReader(fastq)).serialize());
+    }
+
+    /**
+     * An index is only current for a file with the same length and modification time.
+     *
+     * @throws IOException When the file can not be read.
+     */
+    @Test
+    public void detectsChangedFiles()
+            throws IOException {
+
+        byte[] fastq = join(records(5), 0, 5);
+        FastqIndex index = build(fastq, 2, FastqIndex.MAX_CHUNK_BYTES);
+        assertTrue(index.isCurrent(fastq.length, MODIFIED));
+        assertFalse(index.isCurrent(fastq.length, MODIFIED + 1));
+        assertFalse(index.isCurrent(fastq.length + 1, MODIFIED));
+    }
+
+    /**
+     * A boundary chunk larger than a buffer can hold is refused before it is read.
+     *
+     * @throws IOException When the index can not be read.
+     */
+    @Test(expected = IOException.class)
+    public void refusesHugeChunks()
+            throws IOException {
+
+        // An index of one chunk of 3 GiB with two records.
+        QualityProfile profile = new QualityProfile(33, true);
+        profile.add(ByteBuffer.wrap(join(records(2), 0, 2)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[]{'P', 'H', 'I', 'X', 3});
+        for (long value : new long[]{33, 10000, 3L << 30, MODIFIED, 3L << 30, 1, 0, 2}) {
+            QualityProfile.writeVarLong(out, value);
+        }
+        QualityProfile.writeVarLong(out, profile.serialize().length);
+        profile.serialize(out);
+        FastqIndex index = FastqIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        index.query(1, 2, new FastqIndex.ChunkReader() {
+            @Override
+            public ByteBuffer read(long offset, int length) {
+                throw new AssertionError("The chunk must not be read");
+            }
+        });
+    }
+
+    /**
+     * Chunk profiles are only deserialized when a query merges them, so a damaged profile outside the range does not
+     * break the query.
+     *
+     * @throws IOException When the index can not be written or read.
+     */
+    @Test
+    public void deserializesOnlyMergedChunks()
+            throws IOException {
+
+        List<String> records = records(9);
+        byte[] fastq = join(records, 0, records.size());
+        FastqIndex index = build(fastq, 3, FastqIndex.MAX_CHUNK_BYTES);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bytes));
+        byte[] binary = bytes.toByteArray();
+
+        // The last chunk profile ends the binary form, damage its version byte.
+        binary[binary.length - index.getProfile(2).serialize().length] = 99;
+        FastqIndex copy = FastqIndex.read(new DataInputStream(new ByteArrayInputStream(binary)));
+        QualityProfile expected = new QualityProfile(33, true);
+        expected.add(ByteBuffer.wrap(join(records, 0, 6)));
+        assertArrayEquals(expected.serialize(), copy.query(0, 6, new ArrayChunkReader(fastq)).serialize());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * QualityProfileTest
+ *
+ * Tests the parsing, merging and binary form of the QualityProfile.
+ *
+ * @author Wout van Helvoirt
+ */
+public class QualityProfileTest {
+
+    /** Two reads of different length with an ascii base of 33. */
+    private static final String FASTQ = "@r1\nACGT\n+\nIIII\n@r2\nAC\n+\n+5\n";
+
+    /**
+     * Variable length longs round trip at the 7 bit boundaries and take one byte per 7 bits.
+     *
+     * @throws IOException When the values can not be written or read.
+     */
+    @Test
+    public void varLongRoundTrip()
+            throws IOException {
+
+        long[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE, -1};
+        int[] sizes = {1, 1, 1, 2, 2, 3, 5, 9, 10};
+        for (int i = 0; i < values.length; i++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            QualityProfile.writeVarLong(new DataOutputStream(bytes), values[i]);
+            assertEquals(sizes[i], bytes.size());
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            assertEquals(values[i], QualityProfile.readVarLong(in));
+        }
+    }
+
+    /**
+     * A profile with histograms and a negative sum keeps all values through its binary form.
+     *
+     * @throws IOException When the profile can not be read.
+     */
+    @Test
+    public void serializeRoundTrip()
+            throws IOException {
+
+        QualityProfile profile = new QualityProfile(64, true);
+        profile.add(ByteBuffer.wrap(FASTQ.getBytes(StandardCharsets.US_ASCII)));
+        QualityProfile copy = QualityProfile.deserialize(profile.serialize());
+        assertEquals(64, copy.getAsciiBase());
+        assertEquals(2, copy.getReads());
+        assertEquals(4, copy.getLength());
+        assertTrue(copy.hasHistograms());
+        for (int i = 0; i < profile.getLength(); i++) {
+            assertEquals(profile.getSum(i), copy.getSum(i));
+            assertEquals(profile.getCount(i), copy.getCount(i));
+            assertEquals(profile.getQuantile(i, 0.5), copy.getQuantile(i, 0.5));
+        }
+        assertTrue(copy.getSum(0) < 0);
+        assertArrayEquals(profile.serialize(), copy.serialize());
+    }
+
+    /**
+     * A profile without histograms keeps its sums and counts through its binary form.
+     *
+     * @throws IOException When the profile can not be read.
+     */
+    @Test
+    public void serializeWithoutHistograms()
+            throws IOException {
+
+        // Version, ascii base, reads, length, no histograms and a zigzag sum and count per base.
+        byte[] bytes = {2, 33, 3, 2, 0, 120, 3, 60, 2};
+        QualityProfile profile = QualityProfile.deserialize(bytes);
+        assertFalse(profile.hasHistograms());
+        assertEquals(3, profile.getReads());
+        assertEquals(60, profile.getSum(0));
+        assertEquals(30, profile.getSum(1));
+        assertEquals(20.0f, profile.getAverage(0), 0.0f);
+        assertArrayEquals(bytes, profile.serialize());
+    }
+
+    /**
+     * Other versions of the binary form are rejected.
+     *
+     * @throws IOException When the profile can not be read.
+     */
+    @Test(expected = IOException.class)
+    public void rejectsOtherVersions()
+            throws IOException {
+
+        QualityProfile.deserialize(new byte[]{1, 33, 3, 2, 120, 3, 60, 2});
+    }
+
+    /**
+     * Carriage returns and blank lines are skipped, reads with lines of different length are not added.
+     */
+    @Test
+    public void parsesCrlfAndSkipsMismatches() {
+        QualityProfile profile = new QualityProfile(33);
+        String fastq = "\r\n@r1\r\nACGT\r\n+\r\nIIII\r\n\n@r2\nACG\n+\nII\n@r3\nAC\n+\n+5\n";
+        assertEquals(fastq.length(), profile.add(ByteBuffer.wrap(fastq.getBytes(StandardCharsets.US_ASCII))));
+        assertEquals(2, profile.getReads());
+        assertEquals(40 + 10, profile.getSum(0));
+        assertEquals(40 + 20, profile.getSum(1));
+        assertEquals(1, profile.getCount(3));
+    }
+
+    /**
+     * An incomplete record at the end of a buffer is left for the next call, an unterminated phred line is only
+     * complete at the end of the input.
+     *
+     * @throws IOException When the stream can not be read.
+     */
+    @Test
+    public void leavesIncompleteRecords()
+            throws IOException {
+
+        byte[] fastq = "@r1\nACGT\n+\nIIII\n@r2\nAC\n+\n+".getBytes(StandardCharsets.US_ASCII);
+        QualityProfile profile = new QualityProfile(33);
+        assertEquals(16, profile.add(ByteBuffer.wrap(fastq)));
+        assertEquals(1, profile.getReads());
+
+        // At the end of the input a too short unterminated phred line is left as well, a complete one is added.
+        assertEquals(16, new QualityProfile(33).add(new ByteArrayInputStream(fastq)));
+        byte[] complete = "@r1\nACGT\n+\nIIII\n@r2\nAC\n+\n+5".getBytes(StandardCharsets.US_ASCII);
+        QualityProfile streamed = new QualityProfile(33);
+        assertEquals(complete.length, streamed.add(new ByteArrayInputStream(complete)));
+        assertEquals(2, streamed.getReads());
+    }
+
+    /**
+     * Merging profiles of parts of the data gives the profile of all data.
+     */
+    @Test
+    public void mergesParts() {
+        QualityProfile whole = new QualityProfile(33, true);
+        whole.add(ByteBuffer.wrap((FASTQ + FASTQ).getBytes(StandardCharsets.US_ASCII)));
+        QualityProfile merged = new QualityProfile(33, true);
+        for (int i = 0; i < 2; i++) {
+            QualityProfile part = new QualityProfile(33, true);
+            part.add(ByteBuffer.wrap(FASTQ.getBytes(StandardCharsets.US_ASCII)));
+            merged.merge(part);
+        }
+        assertArrayEquals(whole.serialize(), merged.serialize());
+    }
+
+    /**
+     * Histograms can not be made up from a profile without them.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMergeWithoutHistograms() {
+        new QualityProfile(33, true).merge(new QualityProfile(33));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+import java.io.IOException;
+
+/**
+ * BamInputFormat
+ *
+ * This is a custom InputFormat class for BAM files, aligned or unaligned. Every file is read whole by one Mapper
+ * and the reads are passed on as fastq lines. The BGZF blocks are decompressed as one gzip stream, which can not
+ * start in the middle of a file, so a large BAM file is processed by a single Mapper.
+ *
+ * @author Wout van Helvoirt
+ */
+public class BamInputFormat extends FileInputFormat<LongWritable, Text> {
+
+    /**
+     * Creates a BamRecordReader to read each file assigned to this InputSplit.
+     *
+     * @param split   The InputSplit to read. Throws an IllegalArgumentException if this is not a FileSplit.
+     * @param context The context for this task.
+     * @return BamRecordReader to process each file in split.
+     * @throws IOException If there is an error.
+     */
+    @Override
+    public RecordReader<LongWritable, Text> createRecordReader(InputSplit split, TaskAttemptContext context)
+            throws IOException {
+
+        // Return the new BamRecordReader.
+        return new BamRecordReader();
+    }
+
+    /**
+     * Override method that keeps files whole, reads can only be found by reading the file from the start.
+     *
+     * @param context The context of the job.
+     * @param file    The file to check.
+     * @return boolean false, files are never split.
+     */
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        return false;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * BamRecordReader
+ *
+ * This is a custom class to read the reads of a whole BAM file, aligned or unaligned. BGZF compressed blocks are
+ * concatenated gzip members, which are decompressed as one stream. Sequences and qualities are decoded straight from
+ * the binary records. Reads without qualities and secondary or supplementary alignments are skipped, reverse strand
+ * reads are turned back to their sequenced orientation.
+ *
+ * @author Wout van Helvoirt
+ */
+public class BamRecordReader extends ReadBatchRecordReader {
+
+    /** The BAM magic string. */
+    private static final byte[] MAGIC = {'B', 'A', 'M', 1};
+    /** Bases belonging to the 4 bit sequence codes. */
+    private static final byte[] BASES = "=ACMGRSVTWYHKDBN".getBytes(StandardCharsets.US_ASCII);
+    /** Size of the fixed part of an alignment record. */
+    private static final int FIXED_SIZE = 32;
+
+    /** The compressed file stream, used for the position. */
+    private FSDataInputStream file;
+    /** The decompressed stream. */
+    private DataInputStream in;
+    /** Buffer holding one alignment record. */
+    private byte[] record = new byte[0];
+    /** Buffer for the sequence of a read. */
+    private byte[] sequence = new byte[0];
+    /** Buffer for the phred scores of a read. */
+    private byte[] phred = new byte[0];
+
+    /**
+     * Opens the BAM file and skips the header and reference dictionary.
+     *
+     * @param split   The FileSplit to read, always a whole file.
+     * @param context The context for this task.
+     * @throws IOException          If the file can not be opened or is not a BAM file.
+     * @throws InterruptedException If there is an error.
+     */
+    @Override
+    protected void open(FileSplit split, TaskAttemptContext context)
+            throws IOException, InterruptedException {
+
+        Path path = split.getPath();
+        this.file = path.getFileSystem(context.getConfiguration()).open(path);
+        this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(this.file, 65536), 65536));
+
+        // Check the magic string and skip the header text and the reference names.
+        byte[] magic = new byte[MAGIC.length];
+        this.in.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException(path + " is not a BAM file");
+            }
+        }
+        skipFully(this.readInt());
+        int references = this.readInt();
+        for (int i = 0; i < references; i++) {
+            skipFully(this.readInt() + 4);
+        }
+    }
+
+    /**
+     * Decodes the next alignment record and adds it if it is a primary read with qualities.
+     *
+     * @return boolean false if the end of the file has been reached.
+     * @throws IOException If there is an error reading the file.
+     */
+    @Override
+    protected boolean nextRead()
+            throws IOException {
+
+        // Read the block size, the end of the last block is the end of the file.
+        int blockSize;
+        try {
+            blockSize = this.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        if (blockSize < FIXED_SIZE) {
+            throw new IOException("Malformed BAM record of " + blockSize + " bytes");
+        }
+        if (this.record.length < blockSize) {
+            this.record = new byte[blockSize];
+        }
+        this.in.readFully(this.record, 0, blockSize);
+        ByteBuffer buffer = ByteBuffer.wrap(this.record, 0, blockSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Skip secondary and supplementary alignments and reads without qualities (first quality 0xff).
+        int nameLength = buffer.get(8) & 0xff;
+        int cigarOperations = buffer.getShort(12) & 0xffff;
+        int flag = buffer.getShort(14) & 0xffff;
+        int length = buffer.getInt(16);
+        int sequenceStart = FIXED_SIZE + nameLength + 4 * cigarOperations;
+        int qualityStart = sequenceStart + (length + 1) / 2;
+        if ((flag & SamRecordReader.FLAG_SKIP) != 0 || length == 0 || (this.record[qualityStart] & 0xff) == 0xff) {
+            return true;
+        }
+
+        // Decode two 4 bit bases per byte.
+        if (this.sequence.length < length) {
+            this.sequence = new byte[length];
+            this.phred = new byte[length];
+        }
+        for (int i = 0; i < length; i++) {
+            int code = this.record[sequenceStart + i / 2];
+            this.sequence[i] = BASES[(i % 2 == 0 ? code >> 4 : code) & 0x0f];
+        }
+        System.arraycopy(this.record, qualityStart, this.phred, 0, length);
+        String name = new String(this.record, FIXED_SIZE, Math.max(0, nameLength - 1), StandardCharsets.US_ASCII);
+        this.appendRead(name, this.sequence, this.phred, length, (flag & SamRecordReader.FLAG_REVERSE) != 0);
+        return true;
+    }
+
+    /**
+     * Returns the position in the compressed file.
+     *
+     * @return long with the position.
+     * @throws IOException If the position can not be read.
+     */
+    @Override
+    protected long getPosition()
+            throws IOException {
+
+        return this.file == null ? 0 : this.file.getPos();
+    }
+
+    /**
+     * Reads a little endian 32 bit integer.
+     *
+     * @return int that was read.
+     * @throws IOException If there is an error reading the file.
+     */
+    private int readInt()
+            throws IOException {
+
+        return Integer.reverseBytes(this.in.readInt());
+    }
+
+    /**
+     * Skips an exact amount of bytes.
+     *
+     * @param bytes Amount of bytes to skip.
+     * @throws IOException If the end of the file is reached first.
+     */
+    private void skipFully(int bytes)
+            throws IOException {
+
+        int skipped = 0;
+        while (skipped < bytes) {
+            int step = this.in.skipBytes(bytes - skipped);
+            if (step == 0) {
+                throw new EOFException("Unexpected end of BAM header");
+            }
+            skipped += step;
+        }
+    }
+
+    /**
+     * Closes any connection.
+     *
+     * @throws IOException Returns default exception.
+     */
+    @Override
+    public void close()
+            throws IOException {
+
+        if (this.in != null) {
+            this.in.close();
+        }
+    }
+}
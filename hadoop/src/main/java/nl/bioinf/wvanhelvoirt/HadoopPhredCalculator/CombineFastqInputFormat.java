@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReaderWrapper;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+
+import java.io.IOException;
+
+/**
+ * CombineFastqInputFormat
+ *
+ * This is a custom InputFormat class that packs many small fastq files into node or rack local splits up to the
+ * maximum split size. Each file is read whole by a NReadRecordReader. The CombineFileRecordReader sets
+ * 'mapreduce.map.input.file' to the file being read, so the Mapper can still attribute reads to their file.
+ *
+ * @author Wout van Helvoirt
+ */
+public class CombineFastqInputFormat extends CombineFileInputFormat<LongWritable, Text> {
+
+    /**
+     * Creates a CombineFileRecordReader that reads every file in the CombineFileSplit with a NReadRecordReader.
+     *
+     * @param split   The InputSplit to read, must be a CombineFileSplit.
+     * @param context The context for this task.
+     * @return CombineFileRecordReader to process each file in split.
+     * @throws IOException If there is an error.
+     */
+    @Override
+    public RecordReader<LongWritable, Text> createRecordReader(InputSplit split, TaskAttemptContext context)
+            throws IOException {
+
+        // Return the new CombineFileRecordReader.
+        return new CombineFileRecordReader<>((CombineFileSplit) split, context, NReadRecordReaderWrapper.class);
+    }
+
+    /**
+     * Override method that keeps files whole, a split inside a file could start in the middle of a read.
+     *
+     * @param context The context of the job.
+     * @param file    The file to check.
+     * @return boolean false, files are never split.
+     */
+    @Override
+    protected boolean isSplitable(JobContext context, Path file) {
+        return false;
+    }
+
+    /**
+     * NReadRecordReaderWrapper
+     *
+     * Reads one file of a CombineFileSplit with the NReadRecordReader of NReadInputFormat.
+     */
+    private static class NReadRecordReaderWrapper extends CombineFileRecordReaderWrapper<LongWritable, Text> {
+
+        /**
+         * Constructor called via reflection from within CombineFileRecordReader.
+         *
+         * @param split   The CombineFileSplit containing the file.
+         * @param context The context for this task.
+         * @param index   Index of the file in the CombineFileSplit.
+         * @throws IOException          If there is an error.
+         * @throws InterruptedException If there is an error.
+         */
+        public NReadRecordReaderWrapper(CombineFileSplit split, TaskAttemptContext context, Integer index)
+                throws IOException, InterruptedException {
+            super(new NReadInputFormat(), split, context, index);
+        }
+    }
+}
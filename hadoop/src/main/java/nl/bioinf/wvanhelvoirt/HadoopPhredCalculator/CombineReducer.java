@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import nl.bioinf.wvanhelvoirt.HadoopPhredCalculator.core.QualityProfile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * CombineReducer
+ *
+ * The Reducer class that combines the data from all the mappers to a single array per metric.
+ *
+ * @author Wout van Helvoirt
+ */
+public class CombineReducer extends Reducer<Text, MetricWritable, Text, TextArrayWritable> {
+
+    /**
+     * Override method that processes all mapper outputs of one metric to one array, ready to be written as file.
+     *
+     * @param key     Text with the metric the values belong to.
+     * @param values  Iterable with AveragePhredCalculator items from each mapper.
+     * @param context Context containing job information.
+     * @throws IOException          When something went wrong.
+     * @throws InterruptedException When connection was interrupted.
+     */
+    @Override
+    public void reduce(Text key, Iterable<MetricWritable> values, Context context)
+            throws IOException, InterruptedException {
+
+        // Pick the combining step belonging to the metric.
+        if (ReadMapper.PHRED_KEY.equals(key.toString())) {
+            this.reducePhred(key, values, context);
+        } else if (ReadMapper.DUPLICATION_KEY.equals(key.toString())) {
+            this.reduceDuplication(key, values, context);
+        } else {
+            this.reduceSketches(key, values, context);
+        }
+    }
+
+    /**
+     * Combines the phred score sums and counts per base to the average phred score per base.
+     *
+     * @param key     Text with the metric the values belong to.
+     * @param values  Iterable with the phred sums and counts from each mapper.
+     * @param context Context containing job information.
+     * @throws IOException          When something went wrong.
+     * @throws InterruptedException When connection was interrupted.
+     */
+    private void reducePhred(Text key, Iterable<MetricWritable> values, Context context)
+            throws IOException, InterruptedException {
+
+        // Merge the QualityProfile of each Mapper into one.
+        QualityProfile profile = null;
+        for (MetricWritable value : values) {
+            QualityProfile mapperProfile = ((ProfileWritable) value.get()).get();
+            if (profile == null) {
+                profile = mapperProfile;
+            } else {
+                profile.merge(mapperProfile);
+            }
+        }
+
+        // Add the Text array to the ArrayWritable wrapper and return the result.
+        context.write(key, new TextArrayWritable(Text.class, formatAverages(profile)));
+    }
+
+    /**
+     * Creates the lines of the average phred score per base of a QualityProfile.
+     *
+     * @param profile The QualityProfile with the phred score sums and counts per base.
+     * @return Text array with a header line and a line per base.
+     */
+    static Text[] formatAverages(QualityProfile profile) {
+
+        // Instantiate the Text array and add lines.
+        Text[] averages = new Text[(profile.getLength() + 1)];
+        averages[0] = new Text("base_position\taverage_phred_score");
+        for (int i = 0; i < profile.getLength(); i++) {
+            averages[i + 1] = new Text((i + 1) + "\t" + profile.getAverage(i));
+        }
+        return averages;
+    }
+
+    /**
+     * Merges the HeavyHitterSketches or KmerCounts from each mapper and lists the most frequent sequences with their
+     * count and percentage of all counted items. The counts of a sketch are estimates, those of KmerCounts exact.
+     *
+     * @param key     Text with the metric the values belong to.
+     * @param values  Iterable with the serialized sketches or counts from each mapper.
+     * @param context Context containing job information.
+     * @throws IOException          When something went wrong.
+     * @throws InterruptedException When connection was interrupted.
+     */
+    private void reduceSketches(Text key, Iterable<MetricWritable> values, Context context)
+            throws IOException, InterruptedException {
+
+        HeavyHitterSketch merged = null;
+        KmerCounts mergedCounts = null;
+        for (MetricWritable value : values) {
+            if (value.get() instanceof KmerCounts) {
+                KmerCounts counts = (KmerCounts) value.get();
+                if (mergedCounts == null) {
+                    mergedCounts = counts;
+                } else {
+                    mergedCounts.merge(counts);
+                }
+            } else {
+                HeavyHitterSketch sketch = (HeavyHitterSketch) value.get();
+                if (merged == null) {
+                    merged = sketch;
+                } else {
+                    merged.merge(sketch);
+                }
+            }
+        }
+
+        // Instantiate the Text array and add lines for the most frequent sequences.
+        int amount = context.getConfiguration().getInt("overrepresented.top", 20);
+        List<Map.Entry<String, Long>> top;
+        long total;
+        Text[] sequenceCount;
+        if (mergedCounts != null) {
+            top = mergedCounts.getTop(amount);
+            total = mergedCounts.getTotal();
+            sequenceCount = new Text[top.size() + 1];
+            sequenceCount[0] = new Text("sequence\tcount\tpercentage");
+        } else {
+            top = merged.getTop(amount);
+            total = merged.getTotal();
+            sequenceCount = new Text[top.size() + 1];
+            sequenceCount[0] = new Text("sequence\testimated_count\testimated_percentage");
+        }
+        for (int i = 0; i < top.size(); i++) {
+            sequenceCount[i + 1] = new Text(top.get(i).getKey() + "\t" + top.get(i).getValue() + "\t"
+                    + (100.0 * top.get(i).getValue() / total));
+        }
+        context.write(key, new TextArrayWritable(Text.class, sequenceCount));
+    }
+
+    /**
+     * Merges the distinct read HyperLogLogs and read counts per file from each mapper and calculates the estimated
+     * amount of distinct reads and the duplication percentage per file.
+     *
+     * @param key     Text with the metric the values belong to.
+     * @param values  Iterable with the DuplicationWritable of each file from each mapper.
+     * @param context Context containing job information.
+     * @throws IOException          When something went wrong.
+     * @throws InterruptedException When connection was interrupted.
+     */
+    private void reduceDuplication(Text key, Iterable<MetricWritable> values, Context context)
+            throws IOException, InterruptedException {
+
+        TreeMap<String, DuplicationWritable> files = new TreeMap<>();
+        for (MetricWritable value : values) {
+            DuplicationWritable counters = (DuplicationWritable) value.get();
+            if (files.containsKey(counters.getFile())) {
+                files.get(counters.getFile()).merge(counters);
+            } else {
+                files.put(counters.getFile(), counters);
+            }
+        }
+
+        // Instantiate the Text array and add a line per file.
+        Text[] duplication = new Text[files.size() + 1];
+        duplication[0] = new Text("file\ttotal_reads\testimated_distinct_reads\tduplication_percentage");
+        int i = 1;
+        for (DuplicationWritable counters : files.values()) {
+            long total = counters.getReads();
+            long distinct = Math.min(counters.getDistinctReads().cardinality(), total);
+            duplication[i++] = new Text(counters.getFile() + "\t" + total + "\t" + distinct + "\t"
+                    + (total == 0 ? 0.0 : 100.0 * (total - distinct) / total));
+        }
+        context.write(key, new TextArrayWritable(Text.class, duplication));
+    }
+}
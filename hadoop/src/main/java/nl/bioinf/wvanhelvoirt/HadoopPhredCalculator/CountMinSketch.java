@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * CountMinSketch
+ *
+ * A Count-Min sketch that estimates item frequencies in a fixed amount of memory (depth * width counters). Estimates
+ * never underestimate the real count and overestimate it by at most 2.72 / width of the total count per row with high
+ * probability. Sketches with the same dimensions can be merged by adding their counters.
+ *
+ * @author Wout van Helvoirt
+ */
+public class CountMinSketch {
+
+    /** Number of hash rows. */
+    private final int depth;
+    /** Number of counters per row. */
+    private final int width;
+    /** The counter table. */
+    private final long[][] table;
+    /** Total amount of items added. */
+    private long total;
+
+    /**
+     * Constructor that creates an empty sketch.
+     *
+     * @param depth Number of hash rows.
+     * @param width Number of counters per row.
+     */
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || width < 1) {
+            throw new IllegalArgumentException("The depth and width of a CountMinSketch must be positive");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.table = new long[depth][width];
+    }
+
+    /**
+     * Adds one occurrence of an item.
+     *
+     * @param hash The 64 bit hash of the item.
+     * @return long with the new estimated count of the item.
+     */
+    public long add(long hash) {
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+
+        // Derive the column of every row from the two hash halves.
+        for (int i = 0; i < this.depth; i++) {
+            int column = ((hash1 + i * hash2) & Integer.MAX_VALUE) % this.width;
+            estimate = Math.min(estimate, ++this.table[i][column]);
+        }
+        this.total++;
+        return estimate;
+    }
+
+    /**
+     * Returns the estimated count of an item.
+     *
+     * @param hash The 64 bit hash of the item.
+     * @return long with the estimated count of the item.
+     */
+    public long estimate(long hash) {
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < this.depth; i++) {
+            int column = ((hash1 + i * hash2) & Integer.MAX_VALUE) % this.width;
+            estimate = Math.min(estimate, this.table[i][column]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Adds all counters of another sketch to this one.
+     *
+     * @param other The CountMinSketch to merge, must have the same dimensions.
+     */
+    public void merge(CountMinSketch other) {
+        if (other.depth != this.depth || other.width != this.width) {
+            throw new IllegalArgumentException("Only CountMinSketches with equal dimensions can be merged");
+        }
+        for (int i = 0; i < this.depth; i++) {
+            for (int j = 0; j < this.width; j++) {
+                this.table[i][j] += other.table[i][j];
+            }
+        }
+        this.total += other.total;
+    }
+
+    /**
+     * Returns the total amount of items added to this sketch.
+     *
+     * @return long with the total count.
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * Returns the number of hash rows.
+     *
+     * @return int with the depth.
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * Returns the number of counters per row.
+     *
+     * @return int with the width.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Writes the sketch in binary form, the counters as variable length longs.
+     *
+     * @param out DataOutput to write to.
+     * @throws IOException When the sketch can not be written.
+     */
+    public void write(DataOutput out)
+            throws IOException {
+
+        WritableUtils.writeVInt(out, this.depth);
+        WritableUtils.writeVInt(out, this.width);
+        WritableUtils.writeVLong(out, this.total);
+        for (long[] row : this.table) {
+            for (long counter : row) {
+                WritableUtils.writeVLong(out, counter);
+            }
+        }
+    }
+
+    /**
+     * Reads a sketch written by write().
+     *
+     * @param in DataInput to read from.
+     * @return CountMinSketch that was read.
+     * @throws IOException When the sketch can not be read.
+     */
+    public static CountMinSketch read(DataInput in)
+            throws IOException {
+
+        CountMinSketch sketch = new CountMinSketch(WritableUtils.readVInt(in), WritableUtils.readVInt(in));
+        sketch.total = WritableUtils.readVLong(in);
+        for (long[] row : sketch.table) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = WritableUtils.readVLong(in);
+            }
+        }
+        return sketch;
+    }
+}
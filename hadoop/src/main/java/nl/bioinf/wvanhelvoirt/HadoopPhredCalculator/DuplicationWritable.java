@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * DuplicationWritable
+ *
+ * A Writable holding the duplication counters of one input file: the file path, the total amount of reads and the
+ * HyperLogLog of the distinct reads. Records of the same file from different mappers can be merged.
+ *
+ * @author Wout van Helvoirt
+ */
+public class DuplicationWritable implements Writable {
+
+    /** The path of the input file. */
+    private String file;
+    /** Total amount of reads of the file. */
+    private long reads;
+    /** HyperLogLog of the distinct reads of the file. */
+    private HyperLogLog distinctReads;
+
+    /**
+     * Constructor used when the value is read as Writable.
+     */
+    public DuplicationWritable() {
+    }
+
+    /**
+     * Constructor that sets the duplication counters of a file.
+     *
+     * @param file          The path of the input file.
+     * @param reads         Total amount of reads of the file.
+     * @param distinctReads HyperLogLog of the distinct reads of the file.
+     */
+    public DuplicationWritable(String file, long reads, HyperLogLog distinctReads) {
+        this.file = file;
+        this.reads = reads;
+        this.distinctReads = distinctReads;
+    }
+
+    /**
+     * Merges the counters of another record of the same file into this one.
+     *
+     * @param other The DuplicationWritable to merge.
+     */
+    public void merge(DuplicationWritable other) {
+        if (!this.file.equals(other.file)) {
+            throw new IllegalArgumentException("Only duplication counters of the same file can be merged");
+        }
+        this.reads += other.reads;
+        this.distinctReads.merge(other.distinctReads);
+    }
+
+    /**
+     * Returns the path of the input file.
+     *
+     * @return String with the file path.
+     */
+    public String getFile() {
+        return this.file;
+    }
+
+    /**
+     * Returns the total amount of reads of the file.
+     *
+     * @return long with the amount of reads.
+     */
+    public long getReads() {
+        return this.reads;
+    }
+
+    /**
+     * Returns the HyperLogLog of the distinct reads of the file.
+     *
+     * @return HyperLogLog of the distinct reads.
+     */
+    public HyperLogLog getDistinctReads() {
+        return this.distinctReads;
+    }
+
+    /**
+     * Override method that writes the file path, the amount of reads and the HyperLogLog in binary form.
+     *
+     * @param out The DataOutput to write to.
+     * @throws IOException When the counters can not be written.
+     */
+    @Override
+    public void write(DataOutput out)
+            throws IOException {
+
+        Text.writeString(out, this.file);
+        WritableUtils.writeVLong(out, this.reads);
+        this.distinctReads.write(out);
+    }
+
+    /**
+     * Override method that reads the counters written by write(), replacing the contents of this record.
+     *
+     * @param in The DataInput to read from.
+     * @throws IOException When the counters can not be read.
+     */
+    @Override
+    public void readFields(DataInput in)
+            throws IOException {
+
+        this.file = Text.readString(in);
+        this.reads = WritableUtils.readVLong(in);
+        this.distinctReads = HyperLogLog.read(in);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.LineReader;
+
+import java.io.IOException;
+
+/**
+ * FastaQualRecordReader
+ *
+ * This is a custom class that reads a whole FASTA file together with its QUAL file. The QUAL file has the same name
+ * with the extension replaced by '.qual', or '.qual' appended. Both files are read in lockstep and every record must
+ * have the same name in both files. Sequences and space separated phred scores may span multiple lines.
+ *
+ * @author Wout van Helvoirt
+ */
+public class FastaQualRecordReader extends ReadBatchRecordReader {
+
+    /** The FASTA file stream, used for the position. */
+    private FSDataInputStream fastaFile;
+    /** The FASTA lines. */
+    private LineReader fasta;
+    /** The QUAL lines. */
+    private LineReader qual;
+    /** Header line of the next FASTA record, null at the end of the file. */
+    private String fastaHeader;
+    /** Header line of the next QUAL record, null at the end of the file. */
+    private String qualHeader;
+    /** Buffer for the sequence of a read. */
+    private byte[] sequence = new byte[256];
+    /** Buffer for the phred scores of a read. */
+    private byte[] phred = new byte[256];
+
+    /**
+     * Opens the FASTA file and its QUAL file and reads the first headers.
+     *
+     * @param split   The FileSplit to read, always a whole file.
+     * @param context The context for this task.
+     * @throws IOException          If one of the files can not be opened.
+     * @throws InterruptedException If there is an error.
+     */
+    @Override
+    protected void open(FileSplit split, TaskAttemptContext context)
+            throws IOException, InterruptedException {
+
+        Path fastaPath = split.getPath();
+        FileSystem fs = fastaPath.getFileSystem(context.getConfiguration());
+        Path qualPath = getQualPath(fs, fastaPath);
+        this.fastaFile = fs.open(fastaPath);
+        this.fasta = new LineReader(this.fastaFile, context.getConfiguration());
+        this.qual = new LineReader(fs.open(qualPath), context.getConfiguration());
+        this.fastaHeader = nextHeader(this.fasta);
+        this.qualHeader = nextHeader(this.qual);
+    }
+
+    /**
+     * Returns the QUAL file belonging to a FASTA file.
+     *
+     * @param fs        The FileSystem of the files.
+     * @param fastaPath The FASTA file.
+     * @return Path of the QUAL file.
+     * @throws IOException If there is no QUAL file.
+     */
+    static Path getQualPath(FileSystem fs, Path fastaPath)
+            throws IOException {
+
+        String name = fastaPath.getName();
+        int extension = name.lastIndexOf('.');
+        String baseName = extension > 0 ? name.substring(0, extension) : name;
+        Path replaced = new Path(fastaPath.getParent(), baseName + ".qual");
+        if (fs.exists(replaced)) {
+            return replaced;
+        }
+        Path appended = new Path(fastaPath.getParent(), name + ".qual");
+        if (fs.exists(appended)) {
+            return appended;
+        }
+        throw new IOException("No QUAL file " + replaced + " or " + appended + " found for " + fastaPath);
+    }
+
+    /**
+     * Reads the next FASTA and QUAL record and adds them as one read.
+     *
+     * @return boolean false if the end of the files has been reached.
+     * @throws IOException If the files are not in the same order or there is an error reading them.
+     */
+    @Override
+    protected boolean nextRead()
+            throws IOException {
+
+        if (this.fastaHeader == null || this.qualHeader == null) {
+            if ((this.fastaHeader == null) != (this.qualHeader == null)) {
+                throw new IOException("The FASTA and QUAL files do not contain the same amount of records");
+            }
+            return false;
+        }
+        String name = readName(this.fastaHeader);
+        if (!name.equals(readName(this.qualHeader))) {
+            throw new IOException("FASTA record " + name + " does not match QUAL record " + readName(this.qualHeader));
+        }
+
+        // Collect the sequence and the phred score lines up to the next headers.
+        int length = 0;
+        Text line = new Text();
+        this.fastaHeader = null;
+        while (this.fasta.readLine(line) > 0) {
+            if (line.getLength() > 0 && line.charAt(0) == '>') {
+                this.fastaHeader = line.toString();
+                break;
+            }
+            this.ensureCapacity(length + line.getLength());
+            for (int i = 0; i < line.getLength(); i++) {
+                byte base = line.getBytes()[i];
+                if (base > ' ') {
+                    this.sequence[length++] = base;
+                }
+            }
+        }
+        int scores = 0;
+        this.qualHeader = null;
+        while (this.qual.readLine(line) > 0) {
+            if (line.getLength() > 0 && line.charAt(0) == '>') {
+                this.qualHeader = line.toString();
+                break;
+            }
+            for (String score : line.toString().trim().split("\\s+")) {
+                if (!score.isEmpty()) {
+                    this.ensureCapacity(scores + 1);
+                    this.phred[scores++] = (byte) Integer.parseInt(score);
+                }
+            }
+        }
+        if (scores != length) {
+            throw new IOException("FASTA record " + name + " has " + length + " bases but " + scores + " scores");
+        }
+        if (length > 0) {
+            this.appendRead(name, this.sequence, this.phred, length, false);
+        }
+        return true;
+    }
+
+    /**
+     * Grows the sequence and phred buffers if needed.
+     *
+     * @param capacity The minimum capacity.
+     */
+    private void ensureCapacity(int capacity) {
+        if (this.sequence.length < capacity) {
+            byte[] grownSequence = new byte[Math.max(capacity, this.sequence.length * 2)];
+            System.arraycopy(this.sequence, 0, grownSequence, 0, this.sequence.length);
+            this.sequence = grownSequence;
+        }
+        if (this.phred.length < capacity) {
+            byte[] grownPhred = new byte[Math.max(capacity, this.phred.length * 2)];
+            System.arraycopy(this.phred, 0, grownPhred, 0, this.phred.length);
+            this.phred = grownPhred;
+        }
+    }
+
+    /**
+     * Skips lines up to the first header line.
+     *
+     * @param reader The LineReader to read from.
+     * @return String with the header line, null if there is none.
+     * @throws IOException If there is an error reading the file.
+     */
+    private static String nextHeader(LineReader reader)
+            throws IOException {
+
+        Text line = new Text();
+        while (reader.readLine(line) > 0) {
+            if (line.getLength() > 0 && line.charAt(0) == '>') {
+                return line.toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the read name of a header line, the first word after the '>'.
+     *
+     * @param header The header line.
+     * @return String with the read name.
+     */
+    private static String readName(String header) {
+        String[] words = header.substring(1).trim().split("\\s+", 2);
+        return words[0];
+    }
+
+    /**
+     * Returns the position in the FASTA file.
+     *
+     * @return long with the position.
+     * @throws IOException If the position can not be read.
+     */
+    @Override
+    protected long getPosition()
+            throws IOException {
+
+        return this.fastaFile == null ? 0 : this.fastaFile.getPos();
+    }
+
+    /**
+     * Closes any connection.
+     *
+     * @throws IOException Returns default exception.
+     */
+    @Override
+    public void close()
+            throws IOException {
+
+        if (this.fasta != null) {
+            this.fasta.close();
+        }
+        if (this.qual != null) {
+            this.qual.close();
+        }
+    }
+}
@@ -16,7 +16,7 @@
 
 package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
 
-import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
@@ -30,7 +30,7 @@ import java.io.IOException;
  *
  * @author Wout van Helvoirt
  */
-public class FastqFileOutputFormat extends FileOutputFormat<NullWritable, TextArrayWritable> {
+public class FastqFileOutputFormat extends FileOutputFormat<Text, TextArrayWritable> {
 
     /**
      * Creates a FastqFileRecordWriter to write the output from the Reducer to a file.
@@ -40,7 +40,7 @@ public class FastqFileOutputFormat extends FileOutputFormat<NullWritable, TextAr
      * @throws IOException If there is an error.
      */
     @Override
-    public RecordWriter<NullWritable, TextArrayWritable> getRecordWriter(TaskAttemptContext context)
+    public RecordWriter<Text, TextArrayWritable> getRecordWriter(TaskAttemptContext context)
             throws IOException, InterruptedException {
 
         // Return the new FastqFileRecordWriter.
@@ -20,7 +20,6 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -32,16 +31,17 @@ import java.io.OutputStreamWriter;
 /**
  * FastqFileRecordWriter
  *
- * This is a custom class to write the output of the Reducer to a fastqc file.
+ * This is a custom class to write the output of the Reducer to a fastqc file. The phred scores are written to
+ * 'PhredCalculator.fastqc', every other metric to 'PhredCalculator_[metric].fastqc'.
  *
  * @author Wout van Helvoirt
  */
-public class FastqFileRecordWriter extends RecordWriter<NullWritable, TextArrayWritable> {
+public class FastqFileRecordWriter extends RecordWriter<Text, TextArrayWritable> {
 
     /** The Configuration. */
     private final Configuration mConf;
-    /** Output file path. */
-    private final Path mOutputPath;
+    /** Output directory path. */
+    private final Path mOutputDir;
 
     /**
      * Implementation detail: This constructor is built to be called via
@@ -51,36 +51,41 @@ public class FastqFileRecordWriter extends RecordWriter<NullWritable, TextArrayW
      */
     public FastqFileRecordWriter(TaskAttemptContext context) {
         this.mConf = context.getConfiguration();
-        this.mOutputPath = new Path(this.mConf.get("output.dir"), "PhredCalculator.fastqc");
+        this.mOutputDir = new Path(this.mConf.get("output.dir"));
     }
 
     /**
      * Override method that writes the Reducer output to a file.
      *
-     * @param key   LongWritable as key, which will not be used.
+     * @param key   Text with the metric, used for the file name.
      * @param value TextArrayWritable containing the count data.
      * @throws IOException          Returns default exception.
      * @throws InterruptedException If connection problem.
      */
     @Override
-    public void write(NullWritable key, TextArrayWritable value)
+    public void write(Text key, TextArrayWritable value)
             throws IOException, InterruptedException {
 
         // Set the filesystem and delete path if it exists.
-        FileSystem hdfs = FileSystem.get(this.mConf);
-        if (hdfs.exists(this.mOutputPath)) {
-            hdfs.delete(this.mOutputPath, false);
+        Path outputPath;
+        if (ReadMapper.PHRED_KEY.equals(key.toString())) {
+            outputPath = new Path(this.mOutputDir, "PhredCalculator.fastqc");
+        } else {
+            outputPath = new Path(this.mOutputDir, "PhredCalculator_" + key + ".fastqc");
+        }
+        FileSystem hdfs = outputPath.getFileSystem(this.mConf);
+        if (hdfs.exists(outputPath)) {
+            hdfs.delete(outputPath, false);
         }
 
         // Write the TextArrayWritable contents to a fastqc file.
-        FSDataOutputStream out = hdfs.create(this.mOutputPath);
+        FSDataOutputStream out = hdfs.create(outputPath);
         BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out));
         for (Text line : value.get()) {
             bw.write(line.toString());
             bw.newLine();
         }
         bw.close();
-        hdfs.close();
     }
 
     /**
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import nl.bioinf.wvanhelvoirt.HadoopPhredCalculator.core.FastqIndex;
+import nl.bioinf.wvanhelvoirt.HadoopPhredCalculator.core.QualityProfile;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.List;
+
+/**
+ * FastqIndexer
+ *
+ * This class builds a FastqIndex next to each fastq file, named after the file with '.phredidx' appended, and answers
+ * queries over a range of records of each file from these indexes. A query only reads the index and the two chunks at
+ * the boundaries of the range, instead of the whole file. The result is written as 'PhredCalculator.fastqc' and
+ * 'PhredCalculator_quartiles.fastqc' in the output directory.
+ *
+ * @author Wout van Helvoirt
+ */
+public final class FastqIndexer extends Configured implements Tool {
+
+    /** The logger. */
+    private static final Log LOG = LogFactory.getLog(FastqIndexer.class);
+
+    /**
+     * Private constructor, necessary for the ToolRunner in main.
+     */
+    private FastqIndexer() {
+    }
+
+    /**
+     * Main function for running the program.
+     *
+     * @param args the command line arguments.
+     */
+    public static void main(final String[] args) {
+
+        // Try to make a ToolRunner, so hadoop specific command-line arguments will be parsed.
+        try {
+            int res = ToolRunner.run(new Configuration(), new FastqIndexer(), args);
+            System.exit(res);
+        } catch (Exception e) {
+            System.out.println("A problem occurred: " + e.getMessage());
+        }
+    }
+
+    /**
+     * ToolRunner override method which builds the indexes or answers a query, depending on 'index.action'.
+     *
+     * @param args Command-line arguments.
+     * @return int if the action is done.
+     * @throws Exception will be caught in the main.
+     */
+    @Override
+    public int run(String[] args) throws Exception {
+
+        // If 'input.files' not given, throw exception.
+        Configuration conf = this.getConf();
+        if (conf.get("input.files") == null) {
+            throw new IllegalArgumentException("The value of property input.files must not be null");
+        }
+        Path input = new Path(conf.get("input.files"));
+        FileSystem fs = input.getFileSystem(conf);
+        List<FileStatus> files = SplitPlanner.listInputFiles(fs, input, new FastqPathFilter());
+        String action = conf.get("index.action", "build");
+        if ("build".equals(action)) {
+            for (FileStatus file : files) {
+                this.build(fs, file);
+            }
+        } else if ("query".equals(action)) {
+            if (conf.get("output.dir") == null) {
+                throw new IllegalArgumentException("The value of property output.dir must not be null");
+            }
+            this.query(fs, files, new Path(conf.get("output.dir")));
+        } else {
+            throw new IllegalArgumentException("The value of property index.action must be build or query");
+        }
+        return 0;
+    }
+
+    /**
+     * Builds the index of a fastq file and writes it next to the file.
+     *
+     * @param fs   The FileSystem of the file.
+     * @param file The FileStatus of the fastq file.
+     * @throws IOException When the file can not be read or the index can not be written.
+     */
+    private void build(FileSystem fs, FileStatus file)
+            throws IOException {
+
+        FastqIndex index;
+        try (FSDataInputStream in = fs.open(file.getPath())) {
+            index = FastqIndex.build(Channels.newChannel(in), file.getModificationTime(),
+                    this.getConf().getInt("ascii.base", 64), this.getConf().getInt("index.chunk.reads", 10000));
+        }
+        Path indexPath = getIndexPath(file.getPath());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fs.create(indexPath, true)))) {
+            index.write(out);
+        }
+        LOG.info("Indexed " + index.getTotalRecords() + " reads of " + file.getPath() + " in " + index.getChunks()
+                + " chunks as " + indexPath);
+    }
+
+    /**
+     * Makes the profile of the records from 'query.first.record' up to 'query.end.record' of every fastq file and
+     * writes the averages and quartiles per base.
+     *
+     * @param fs     The FileSystem of the files.
+     * @param files  The FileStatuses of the fastq files.
+     * @param output Path of the output directory.
+     * @throws IOException When an index is missing or outdated, or a file can not be read.
+     */
+    private void query(FileSystem fs, List<FileStatus> files, Path output)
+            throws IOException {
+
+        long first = this.getConf().getLong("query.first.record", 0);
+        long end = this.getConf().getLong("query.end.record", Long.MAX_VALUE);
+        QualityProfile profile = new QualityProfile(this.getConf().getInt("ascii.base", 64), true);
+        for (FileStatus file : files) {
+            FastqIndex index;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    fs.open(getIndexPath(file.getPath()))))) {
+                index = FastqIndex.read(in);
+            }
+            if (!index.isCurrent(file.getLen(), file.getModificationTime())) {
+                throw new IOException("The index of " + file.getPath() + " is outdated, build it again");
+            }
+
+            // Boundary chunks are read with positioned reads on one open stream.
+            try (final FSDataInputStream in = fs.open(file.getPath())) {
+                profile.merge(index.query(first, end, new FastqIndex.ChunkReader() {
+                    @Override
+                    public ByteBuffer read(long offset, int length)
+                            throws IOException {
+
+                        byte[] chunk = new byte[length];
+                        in.readFully(offset, chunk);
+                        return ByteBuffer.wrap(chunk);
+                    }
+                }));
+            }
+        }
+        LOG.info("Queried " + profile.getReads() + " reads of " + files.size() + " files");
+
+        // Write the averages like the MapReduce job and the quartiles from the histograms.
+        Text[] quartiles = new Text[profile.getLength() + 1];
+        quartiles[0] = new Text("base_position\tlower_quartile\tmedian\tupper_quartile");
+        for (int i = 0; i < profile.getLength(); i++) {
+            quartiles[i + 1] = new Text((i + 1) + "\t" + profile.getQuantile(i, 0.25) + "\t"
+                    + profile.getQuantile(i, 0.5) + "\t" + profile.getQuantile(i, 0.75));
+        }
+        writeLines(fs, new Path(output, "PhredCalculator.fastqc"), CombineReducer.formatAverages(profile));
+        writeLines(fs, new Path(output, "PhredCalculator_quartiles.fastqc"), quartiles);
+    }
+
+    /**
+     * Returns the path of the index belonging to a fastq file.
+     *
+     * @param fastq Path of the fastq file.
+     * @return Path of the index.
+     */
+    static Path getIndexPath(Path fastq) {
+        return new Path(fastq.getParent(), fastq.getName() + FastqIndex.EXTENSION);
+    }
+
+    /**
+     * Writes lines to a file, replacing an existing file.
+     *
+     * @param fs    The FileSystem to write to.
+     * @param path  Path of the file.
+     * @param lines Text array with the lines.
+     * @throws IOException When the file can not be written.
+     */
+    private static void writeLines(FileSystem fs, Path path, Text[] lines)
+            throws IOException {
+
+        try (FSDataOutputStream out = fs.create(path, true)) {
+            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out));
+            for (Text line : lines) {
+                bw.write(line.toString());
+                bw.newLine();
+            }
+            bw.flush();
+        }
+    }
+}
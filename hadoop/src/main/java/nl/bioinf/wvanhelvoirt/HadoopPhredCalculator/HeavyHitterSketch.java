@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * HeavyHitterSketch
+ *
+ * Tracks the most frequent sequences in fixed memory. All sequences are counted in a CountMinSketch, while a bounded
+ * set of candidates ordered on their estimates keeps the sequences with the highest estimates. Like Space-Saving, an
+ * item that beats the smallest candidate replaces it, which costs O(log capacity) per offer. Sketches can be merged,
+ * after which the candidates of both are ranked again against the merged counters.
+ *
+ * @author Wout van Helvoirt
+ */
+public class HeavyHitterSketch implements Writable {
+
+    /** Orders candidates on ascending estimate, then on sequence. */
+    private static final Comparator<Candidate> ASCENDING = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate first, Candidate second) {
+            int order = Long.compare(first.estimate, second.estimate);
+            return order != 0 ? order : first.item.compareTo(second.item);
+        }
+    };
+
+    /** The counters of all offered sequences. */
+    private CountMinSketch counts;
+    /** Maximum amount of candidates to keep. */
+    private int capacity;
+    /** Candidate sequences by sequence. */
+    private final Map<String, Candidate> candidates = new HashMap<>();
+    /** Candidate sequences ordered on their last known estimate, the first one is replaced next. */
+    private final TreeSet<Candidate> ranking = new TreeSet<>(ASCENDING);
+
+    /**
+     * Constructor used when the sketch is read as Writable.
+     */
+    public HeavyHitterSketch() {
+    }
+
+    /**
+     * Constructor that creates an empty sketch.
+     *
+     * @param depth    Number of hash rows of the CountMinSketch.
+     * @param width    Number of counters per row of the CountMinSketch.
+     * @param capacity Maximum amount of candidate sequences.
+     */
+    public HeavyHitterSketch(int depth, int width, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity of a HeavyHitterSketch must be positive");
+        }
+        this.counts = new CountMinSketch(depth, width);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Counts one occurrence of the characters between start (inclusive) and end (exclusive) of a sequence. A
+     * substring is only created when the sequence becomes a candidate.
+     *
+     * @param sequence The sequence containing the item.
+     * @param start    First character of the item.
+     * @param end      Character after the last one of the item.
+     */
+    public void offer(CharSequence sequence, int start, int end) {
+        long estimate = this.counts.add(SequenceHash.hash64(sequence, start, end));
+
+        // Skip the item if the candidates are full and it can not beat the smallest of them.
+        if (this.candidates.size() >= this.capacity && estimate <= this.ranking.first().estimate) {
+            return;
+        }
+        String item = sequence.subSequence(start, end).toString();
+        Candidate candidate = this.candidates.get(item);
+        if (candidate != null) {
+            this.ranking.remove(candidate);
+            candidate.estimate = estimate;
+            this.ranking.add(candidate);
+        } else {
+            if (this.candidates.size() >= this.capacity) {
+                this.candidates.remove(this.ranking.pollFirst().item);
+            }
+            this.addCandidate(item, estimate);
+        }
+    }
+
+    /**
+     * Merges another sketch into this one. The counters are added and the candidates of both sketches are ranked on
+     * the merged counters, keeping the most frequent ones.
+     *
+     * @param other The HeavyHitterSketch to merge, must have the same dimensions.
+     */
+    public void merge(HeavyHitterSketch other) {
+        this.counts.merge(other.counts);
+        List<String> items = new ArrayList<>(this.candidates.keySet());
+        for (String item : other.candidates.keySet()) {
+            if (!this.candidates.containsKey(item)) {
+                items.add(item);
+            }
+        }
+        this.candidates.clear();
+        this.ranking.clear();
+        for (String item : items) {
+            this.addCandidate(item, this.counts.estimate(SequenceHash.hash64(item)));
+        }
+
+        // Drop the least frequent candidates above capacity.
+        while (this.candidates.size() > this.capacity) {
+            this.candidates.remove(this.ranking.pollFirst().item);
+        }
+    }
+
+    /**
+     * Returns the most frequent candidates sorted on descending estimated count.
+     *
+     * @param amount Maximum amount of sequences to return.
+     * @return List with sequences and their estimated counts.
+     */
+    public List<Map.Entry<String, Long>> getTop(int amount) {
+
+        // Estimates of candidates that were not offered lately are outdated, refresh them first.
+        List<Candidate> all = new ArrayList<>(this.ranking);
+        this.ranking.clear();
+        for (Candidate candidate : all) {
+            candidate.estimate = this.counts.estimate(SequenceHash.hash64(candidate.item));
+            this.ranking.add(candidate);
+        }
+        List<Map.Entry<String, Long>> top = new ArrayList<>();
+        Iterator<Candidate> descending = this.ranking.descendingIterator();
+        while (descending.hasNext() && top.size() < amount) {
+            Candidate candidate = descending.next();
+            top.add(new AbstractMap.SimpleImmutableEntry<>(candidate.item, candidate.estimate));
+        }
+        return top;
+    }
+
+    /**
+     * Returns the total amount of offered items.
+     *
+     * @return long with the total count.
+     */
+    public long getTotal() {
+        return this.counts.getTotal();
+    }
+
+    /**
+     * Adds a new candidate.
+     *
+     * @param item     The sequence of the candidate.
+     * @param estimate The estimated count of the sequence.
+     */
+    private void addCandidate(String item, long estimate) {
+        Candidate candidate = new Candidate(item, estimate);
+        this.candidates.put(item, candidate);
+        this.ranking.add(candidate);
+    }
+
+    /**
+     * Writes the sketch in binary form: the CountMinSketch, the capacity and the candidate sequences. The estimates
+     * of the candidates are taken from the counters again when reading.
+     *
+     * @param out DataOutput to write to.
+     * @throws IOException When the sketch can not be written.
+     */
+    @Override
+    public void write(DataOutput out)
+            throws IOException {
+
+        this.counts.write(out);
+        WritableUtils.writeVInt(out, this.capacity);
+        WritableUtils.writeVInt(out, this.candidates.size());
+        for (String item : this.candidates.keySet()) {
+            Text.writeString(out, item);
+        }
+    }
+
+    /**
+     * Reads a sketch written by write(), replacing the contents of this sketch.
+     *
+     * @param in DataInput to read from.
+     * @throws IOException When the sketch can not be read.
+     */
+    @Override
+    public void readFields(DataInput in)
+            throws IOException {
+
+        this.counts = CountMinSketch.read(in);
+        this.capacity = WritableUtils.readVInt(in);
+        this.candidates.clear();
+        this.ranking.clear();
+        int size = WritableUtils.readVInt(in);
+        for (int i = 0; i < size; i++) {
+            String item = Text.readString(in);
+            this.addCandidate(item, this.counts.estimate(SequenceHash.hash64(item)));
+        }
+    }
+
+    /**
+     * Candidate
+     *
+     * A candidate sequence with its last known estimate.
+     */
+    private static final class Candidate {
+
+        /** The sequence. */
+        private final String item;
+        /** The last known estimated count. */
+        private long estimate;
+
+        /**
+         * Constructor that sets the sequence and its estimate.
+         *
+         * @param item     The sequence.
+         * @param estimate The estimated count.
+         */
+        private Candidate(String item, long estimate) {
+            this.item = item;
+            this.estimate = estimate;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * HyperLogLog
+ *
+ * Estimates the amount of distinct items using 2^precision one byte registers. The relative standard error is about
+ * 1.04 / sqrt(2^precision), 1.6% with the default precision of 12 (4 KB). Sketches with the same precision can be
+ * merged by taking the maximum of each register.
+ *
+ * @author Wout van Helvoirt
+ */
+public class HyperLogLog {
+
+    /** Amount of hash bits used for the register index. */
+    private final int precision;
+    /** The registers holding the maximum rank seen per index. */
+    private final byte[] registers;
+
+    /**
+     * Constructor that creates an empty HyperLogLog.
+     *
+     * @param precision Amount of hash bits used for the register index, between 4 and 18.
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("The precision of a HyperLogLog must be between 4 and 18");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds an item.
+     *
+     * @param hash The 64 bit hash of the item.
+     */
+    public void add(long hash) {
+
+        // The first bits select the register, the rank is the position of the first 1 bit in the rest.
+        int index = (int) (hash >>> (64 - this.precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << this.precision), 64 - this.precision) + 1;
+        if (rank > this.registers[index]) {
+            this.registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Merges another HyperLogLog into this one.
+     *
+     * @param other The HyperLogLog to merge, must have the same precision.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != this.precision) {
+            throw new IllegalArgumentException("Only HyperLogLogs with equal precision can be merged");
+        }
+        for (int i = 0; i < this.registers.length; i++) {
+            this.registers[i] = (byte) Math.max(this.registers[i], other.registers[i]);
+        }
+    }
+
+    /**
+     * Returns the estimated amount of distinct items added.
+     *
+     * @return long with the estimated cardinality.
+     */
+    public long cardinality() {
+        int registerCount = this.registers.length;
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte register : this.registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1.0 + 1.079 / registerCount);
+        double estimate = alpha * registerCount * registerCount / sum;
+
+        // Use linear counting for small cardinalities, where the raw estimate is biased.
+        if (estimate <= 2.5 * registerCount && zeros > 0) {
+            estimate = registerCount * Math.log((double) registerCount / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Writes the HyperLogLog in binary form, the precision followed by one byte per register.
+     *
+     * @param out DataOutput to write to.
+     * @throws IOException When the HyperLogLog can not be written.
+     */
+    public void write(DataOutput out)
+            throws IOException {
+
+        WritableUtils.writeVInt(out, this.precision);
+        out.write(this.registers);
+    }
+
+    /**
+     * Reads a HyperLogLog written by write().
+     *
+     * @param in DataInput to read from.
+     * @return HyperLogLog that was read.
+     * @throws IOException When the HyperLogLog can not be read.
+     */
+    public static HyperLogLog read(DataInput in)
+            throws IOException {
+
+        HyperLogLog hyperLogLog = new HyperLogLog(WritableUtils.readVInt(in));
+        in.readFully(hyperLogLog.registers);
+        return hyperLogLog;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * KmerCounts
+ *
+ * Counts every k-mer of up to MAX_K bases exactly in a table of 4^k counters, indexed by the k-mer with two bits per
+ * base. All 4^7 k-mers of the default size take 128 KB, so unlike a sketch no k-mers share a counter. K-mers with a
+ * base other than A, C, G or T are skipped. Counts of the same k can be merged by adding the counters.
+ *
+ * @author Wout van Helvoirt
+ */
+public class KmerCounts implements Writable {
+
+    /** The largest k that is counted exactly, which takes 8 MB of counters. */
+    public static final int MAX_K = 10;
+    /** The bases in the order of their two bit code. */
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+    /** Orders k-mers on descending count, then on ascending code. */
+    private static final Comparator<Map.Entry<Integer, Long>> DESCENDING = new Comparator<Map.Entry<Integer, Long>>() {
+        @Override
+        public int compare(Map.Entry<Integer, Long> first, Map.Entry<Integer, Long> second) {
+            int order = Long.compare(second.getValue(), first.getValue());
+            return order != 0 ? order : Integer.compare(first.getKey(), second.getKey());
+        }
+    };
+
+    /** The length of the k-mers. */
+    private int k;
+    /** The count of each k-mer by its code. */
+    private long[] counts;
+    /** The total amount of counted k-mers. */
+    private long total;
+
+    /**
+     * Constructor used when the counts are read as Writable.
+     */
+    public KmerCounts() {
+    }
+
+    /**
+     * Constructor that creates empty counts.
+     *
+     * @param k The length of the k-mers, between 1 and MAX_K.
+     */
+    public KmerCounts(int k) {
+        if (k < 1 || k > MAX_K) {
+            throw new IllegalArgumentException("The k-mer size of KmerCounts must be between 1 and " + MAX_K);
+        }
+        this.k = k;
+        this.counts = new long[1 << (2 * k)];
+    }
+
+    /**
+     * Counts all k-mers of a sequence that only contain the bases A, C, G and T.
+     *
+     * @param sequence The base line of a read.
+     */
+    public void add(CharSequence sequence) {
+
+        // Roll the code of the last k bases, valid counts the bases since the last unknown one.
+        int mask = this.counts.length - 1;
+        int code = 0;
+        int valid = 0;
+        for (int i = 0; i < sequence.length(); i++) {
+            int base = encode(sequence.charAt(i));
+            if (base < 0) {
+                valid = 0;
+                continue;
+            }
+            code = ((code << 2) | base) & mask;
+            if (++valid >= this.k) {
+                this.counts[code]++;
+                this.total++;
+            }
+        }
+    }
+
+    /**
+     * Adds the counts of another KmerCounts to this one.
+     *
+     * @param other The KmerCounts to merge, must have the same k.
+     */
+    public void merge(KmerCounts other) {
+        if (other.k != this.k) {
+            throw new IllegalArgumentException("Only KmerCounts with equal k can be merged");
+        }
+        for (int i = 0; i < this.counts.length; i++) {
+            this.counts[i] += other.counts[i];
+        }
+        this.total += other.total;
+    }
+
+    /**
+     * Returns the count of a k-mer.
+     *
+     * @param kmer The k-mer of k bases.
+     * @return long with the count, 0 for k-mers with other bases or of another length.
+     */
+    public long getCount(CharSequence kmer) {
+        if (kmer.length() != this.k) {
+            return 0;
+        }
+        int code = 0;
+        for (int i = 0; i < kmer.length(); i++) {
+            int base = encode(kmer.charAt(i));
+            if (base < 0) {
+                return 0;
+            }
+            code = (code << 2) | base;
+        }
+        return this.counts[code];
+    }
+
+    /**
+     * Returns the most frequent k-mers sorted on descending count.
+     *
+     * @param amount Maximum amount of k-mers to return.
+     * @return List with k-mers and their counts.
+     */
+    public List<Map.Entry<String, Long>> getTop(int amount) {
+
+        // Keep the best k-mers in a heap with the worst of them on top.
+        PriorityQueue<Map.Entry<Integer, Long>> best = new PriorityQueue<>(Math.max(1, amount),
+                Collections.reverseOrder(DESCENDING));
+        for (int code = 0; code < this.counts.length && amount > 0; code++) {
+            if (this.counts[code] == 0) {
+                continue;
+            }
+            Map.Entry<Integer, Long> entry = new AbstractMap.SimpleImmutableEntry<>(code, this.counts[code]);
+            if (best.size() < amount) {
+                best.add(entry);
+            } else if (DESCENDING.compare(entry, best.peek()) < 0) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+        List<Map.Entry<Integer, Long>> sorted = new ArrayList<>(best);
+        Collections.sort(sorted, DESCENDING);
+        List<Map.Entry<String, Long>> top = new ArrayList<>();
+        for (Map.Entry<Integer, Long> entry : sorted) {
+            top.add(new AbstractMap.SimpleImmutableEntry<>(this.decode(entry.getKey()), entry.getValue()));
+        }
+        return top;
+    }
+
+    /**
+     * Returns the total amount of counted k-mers.
+     *
+     * @return long with the total count.
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * Writes the counts in binary form. Only the k-mers that were seen are written, as the difference of their code
+     * with the previous one followed by their count.
+     *
+     * @param out DataOutput to write to.
+     * @throws IOException When the counts can not be written.
+     */
+    @Override
+    public void write(DataOutput out)
+            throws IOException {
+
+        int seen = 0;
+        for (long count : this.counts) {
+            if (count > 0) {
+                seen++;
+            }
+        }
+        WritableUtils.writeVInt(out, this.k);
+        WritableUtils.writeVInt(out, seen);
+        int previous = 0;
+        for (int code = 0; code < this.counts.length; code++) {
+            if (this.counts[code] > 0) {
+                WritableUtils.writeVInt(out, code - previous);
+                WritableUtils.writeVLong(out, this.counts[code]);
+                previous = code;
+            }
+        }
+    }
+
+    /**
+     * Reads counts written by write(), replacing the contents of these counts.
+     *
+     * @param in DataInput to read from.
+     * @throws IOException When the counts can not be read.
+     */
+    @Override
+    public void readFields(DataInput in)
+            throws IOException {
+
+        int size = WritableUtils.readVInt(in);
+        if (size < 1 || size > MAX_K) {
+            throw new IOException("Invalid k-mer size " + size);
+        }
+        this.k = size;
+        this.counts = new long[1 << (2 * size)];
+        this.total = 0;
+        int seen = WritableUtils.readVInt(in);
+        int code = 0;
+        for (int i = 0; i < seen; i++) {
+            code += WritableUtils.readVInt(in);
+            if (code < 0 || code >= this.counts.length) {
+                throw new IOException("Invalid k-mer code " + code);
+            }
+            this.counts[code] = WritableUtils.readVLong(in);
+            this.total += this.counts[code];
+        }
+    }
+
+    /**
+     * Returns the two bit code of a base.
+     *
+     * @param base The base character.
+     * @return int with the code, -1 for other characters than A, C, G and T.
+     */
+    private static int encode(char base) {
+        switch (base) {
+            case 'A':
+            case 'a':
+                return 0;
+            case 'C':
+            case 'c':
+                return 1;
+            case 'G':
+            case 'g':
+                return 2;
+            case 'T':
+            case 't':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the k-mer of a code.
+     *
+     * @param code The two bit code of the k-mer.
+     * @return String with the k bases.
+     */
+    private String decode(int code) {
+        char[] kmer = new char[this.k];
+        for (int i = this.k - 1; i >= 0; i--) {
+            kmer[i] = BASES[code & 3];
+            code >>>= 2;
+        }
+        return new String(kmer);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.io.GenericWritable;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * MetricWritable
+ *
+ * The map output value, which wraps the Writable of one metric. Every metric is passed on in its own binary form, the
+ * key tells the Reducer which type to expect.
+ *
+ * @author Wout van Helvoirt
+ */
+public class MetricWritable extends GenericWritable {
+
+    /** The Writable types a metric can have, new types must be added at the end. */
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Writable>[] TYPES = new Class[] {
+        TextArrayWritable.class,
+        HeavyHitterSketch.class,
+        ProfileWritable.class,
+        DuplicationWritable.class,
+        KmerCounts.class
+    };
+
+    /**
+     * Constructor used when the value is read as Writable.
+     */
+    public MetricWritable() {
+    }
+
+    /**
+     * Constructor that wraps the Writable of a metric.
+     *
+     * @param value The Writable to wrap.
+     */
+    public MetricWritable(Writable value) {
+        this.set(value);
+    }
+
+    /**
+     * Override method that returns the Writable types a metric can have.
+     *
+     * @return Class array with the types.
+     */
+    @Override
+    protected Class<? extends Writable>[] getTypes() {
+        return TYPES;
+    }
+}
@@ -138,8 +138,9 @@ public class NReadRecordReader extends RecordReader<LongWritable, Text> {
         FileSystem fs = file.getFileSystem(conf);
         FSDataInputStream infile = fs.open(split.getPath());
 
-        // Use number of lines given by user and set parameters.
-        this.NLINESTOPROCESS = NLineInputFormat.getNumLinesPerSplit(context);
+        // Use number of lines given by user, but never more than 'reads.per.record' reads at once, and set parameters.
+        this.NLINESTOPROCESS = Math.min(NLineInputFormat.getNumLinesPerSplit(context),
+                4 * conf.getInt("reads.per.record", 2000));
         this.maxLineLength = conf.getInt("mapreduce.input.linerecordreader.line.maxlength", Integer.MAX_VALUE);
         this.start = split.getStart();
         this.end = this.start + split.getLength();
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * ParallelPhredCalculator
+ *
+ * This class runs the Hadoop MapReduce job. It assigns a mapper and reducer and is able to calculate the average phred
+ * score per base per read in a FastQ file. Users can change the job name by assigning a value to the
+ * 'mapreduce.job.name' option. 'input.files' and 'output.dir' options are required. The amount of reads per mapper is
+ * planned by the SplitPlanner, unless given with 'reads.per.map'. With 'combine.files' many small files are packed into
+ * combined splits by the CombineFastqInputFormat. Besides fastq, 'input.format' can select SAM, BAM or FASTA+QUAL
+ * input, which is decoded to fastq reads in memory.
+ *
+ * @author Wout van Helvoirt
+ */
+public final class ParallelPhredCalculator extends Configured implements Tool {
+
+    /**
+     * Private constructor, necessary for the ToolRunner in main.
+     */
+    private ParallelPhredCalculator() {
+    }
+
+    /**
+     * Main function for running the program.
+     *
+     * @param args the command line arguments.
+     */
+    public static void main(final String[] args) {
+
+        // Try to make a ToolRunner, so hadoop specific command-line arguments will be parsed.
+        try {
+            int res = ToolRunner.run(new Configuration(), new ParallelPhredCalculator(), args);
+            System.exit(res);
+        } catch (Exception e) {
+            System.out.println("A problem occurred: " + e.getMessage());
+        }
+    }
+
+    /**
+     * ToolRunner override method which contains the code to run the Hadoop MapReduce job.
+     *
+     * @param args Command-line arguments.
+     * @return int if the job is done.
+     * @throws Exception will be caught in the main.
+     */
+    @Override
+    public int run(String[] args) throws Exception {
+
+        // Create the job with the configuration given by ToolRunner, execute it and return status.
+        return createJob(this.getConf()).waitForCompletion(true) ? 0 : 1;
+    }
+
+    /**
+     * Creates the Hadoop MapReduce job for the 'input.files' and 'output.dir' in the configuration. When at least one
+     * input file matches, an existing output directory is deleted unless 'output.overwrite' is false.
+     *
+     * @param conf The Configuration of the job.
+     * @return Job ready to be submitted.
+     * @throws IOException When the input or output can not be accessed.
+     */
+    public static Job createJob(Configuration conf)
+            throws IOException {
+
+        // Set filesystem.
+        FileSystem hdfs = FileSystem.get(conf);
+
+        // Create job with configuration, name and set the main class for the jar file.
+        Job job = Job.getInstance(conf, conf.get("mapreduce.job.name", "PhredCalculator"));
+        job.setJarByClass(ParallelPhredCalculator.class);
+
+        // Set the mapper and reducer classes.
+        job.setMapperClass(ReadMapper.class);
+        job.setReducerClass(CombineReducer.class);
+
+        // Specify the output key and value classes, the key names the metric. The mappers pass each metric on in its
+        // own binary form.
+        job.setOutputKeyClass(Text.class);
+        job.setMapOutputValueClass(MetricWritable.class);
+        job.setOutputValueClass(TextArrayWritable.class);
+
+        // If 'input.dir' and/or 'output.dir' not given, throw exception.
+        if (conf.get("input.files") != null && conf.get("output.dir") != null) {
+
+            // Combined splits are only made for fastq files, other formats are read per file.
+            String format = conf.get("input.format", "fastq");
+            if (conf.getBoolean("combine.files", false) && !"fastq".equals(format)) {
+                throw new IllegalArgumentException("The option combine.files is only supported for fastq input, not "
+                        + format);
+            }
+
+            // Plan the reads per mapper, unless given by the user.
+            PathFilter filter = getPathFilter(conf);
+            Path input = new Path(conf.get("input.files"));
+            List<FileStatus> files = SplitPlanner.listInputFiles(input.getFileSystem(conf), input, filter);
+            if (files.isEmpty()) {
+                throw new IllegalArgumentException("No input files match " + input);
+            }
+            SplitPlanner planner = new SplitPlanner(conf);
+            planner.plan(input, filter);
+
+            // Give the input files of the input format found in the directories and globs to the job, a path filter
+            // would also be applied to the directories themselves, and set input formatting class.
+            Path[] inputFiles = new Path[files.size()];
+            for (int i = 0; i < inputFiles.length; i++) {
+                inputFiles[i] = files.get(i).getPath();
+            }
+            NReadInputFormat.setNumLinesPerSplit(job, (4 * planner.getReadsPerMap()));
+            FileInputFormat.setInputPaths(job, inputFiles);
+            switch (format) {
+                case "sam":
+
+                    // The planned size is at least one block, but 'reads.per.map' given by the user may be smaller.
+                    SamInputFormat.setMinInputSplitSize(job, planner.getSplitBytes());
+                    if (conf.get("reads.per.map") != null) {
+                        SamInputFormat.setMaxInputSplitSize(job, planner.getSplitBytes());
+                    }
+                    job.setInputFormatClass(SamInputFormat.class);
+                    break;
+                case "bam":
+                    job.setInputFormatClass(BamInputFormat.class);
+                    break;
+                case "fastaqual":
+                    job.setInputFormatClass(FastaQualInputFormat.class);
+                    break;
+                default:
+                    if (conf.getBoolean("combine.files", false)) {
+
+                        // Pack whole files into splits up to the planned size, unless given by the user.
+                        CombineFastqInputFormat.setMaxInputSplitSize(job,
+                                conf.getLong("combine.split.size", planner.getSplitBytes()));
+                        job.setInputFormatClass(CombineFastqInputFormat.class);
+                    } else {
+                        job.setInputFormatClass(NReadInputFormat.class);
+                    }
+            }
+
+            // Delete output path on filesystem if exists and allowed, and set output formatting class.
+            Path output = new Path(conf.get("output.dir"));
+            if (conf.getBoolean("output.overwrite", true) && hdfs.exists(output)) {
+                hdfs.delete(output, true);
+            }
+            FastqFileOutputFormat.setOutputPath(job, output);
+            job.setOutputFormatClass(FastqFileOutputFormat.class);
+        } else {
+            throw new IllegalArgumentException("The value of property input.files and output.dir must not be null");
+        }
+        return job;
+    }
+
+    /**
+     * Returns the PathFilter selecting the files of the 'input.format' in the configuration.
+     *
+     * @param conf The Configuration of the job.
+     * @return PathFilter for the input format.
+     */
+    public static PathFilter getPathFilter(Configuration conf) {
+        switch (conf.get("input.format", "fastq")) {
+            case "fastq":
+                return new FastqPathFilter();
+            case "sam":
+                return new SamPathFilter();
+            case "bam":
+                return new BamPathFilter();
+            case "fastaqual":
+                return new FastaPathFilter();
+            default:
+                throw new IllegalArgumentException("The value of property input.format must be fastq, sam, bam or "
+                        + "fastaqual");
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.ClassUtil;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PhredCalculatorServer
+ *
+ * This class runs a long-running HTTP server that submits PhredCalculator jobs, so the JVM start, Configuration and
+ * FileSystem initialization and jar upload are paid once instead of per job. The jar is staged on the FileSystem at
+ * startup and added to the classpath of every cluster job. Small inputs run in the local job runner inside the server
+ * and return the result directly, larger inputs are submitted to the cluster and return a job handle.
+ *
+ * POST /jobs submits a job, the parameters ('input.files' and the tuning options in ALLOWED_OPTIONS) are given as query
+ * string or form body. Every job writes to its own directory below 'server.output.dir', callers can not choose the
+ * output directory. GET /jobs/[job id] returns the state of a job and its result once it succeeded. Finished jobs and
+ * their output are removed after 'server.job.ttl.seconds'.
+ *
+ * @author Wout van Helvoirt
+ */
+public final class PhredCalculatorServer extends Configured implements Tool {
+
+    /** The logger. */
+    private static final Log LOG = LogFactory.getLog(PhredCalculatorServer.class);
+    /** Path prefix of the jobs endpoint. */
+    private static final String JOBS_PATH = "/jobs";
+    /** The job options a request may set, any other option is rejected. */
+    static final Set<String> ALLOWED_OPTIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "input.files", "input.format", "ascii.base", "mapreduce.job.name", "reads.per.map", "reads.per.record",
+            "split.target.seconds", "split.bytes.per.second", "split.vcores", "combine.files", "combine.split.size",
+            "overrepresented.enabled", "overrepresented.top", "overrepresented.prefix.length", "kmer.size",
+            "sketch.depth", "sketch.width", "sketch.capacity", "duplication.enabled", "duplication.precision",
+            "duplication.prefix.length")));
+
+    /** Submitted jobs by job id. */
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    /** Time in milliseconds at which a job was first seen finished, by job id. */
+    private final Map<String, Long> finished = new ConcurrentHashMap<>();
+    /** Jar staged on the FileSystem, null when not running from a jar. */
+    private Path stagedJar;
+    /** The HTTP server, null when not started. */
+    private HttpServer server;
+    /** Threads handling the requests. */
+    private ExecutorService requestPool;
+    /** Thread removing finished jobs. */
+    private ScheduledExecutorService evictionPool;
+
+    /**
+     * Package-private constructor, necessary for the ToolRunner in main and the tests.
+     */
+    PhredCalculatorServer() {
+    }
+
+    /**
+     * Main function for running the server.
+     *
+     * @param args the command line arguments.
+     */
+    public static void main(final String[] args) {
+
+        // Try to make a ToolRunner, so hadoop specific command-line arguments will be parsed.
+        try {
+            int res = ToolRunner.run(new Configuration(), new PhredCalculatorServer(), args);
+            System.exit(res);
+        } catch (Exception e) {
+            System.out.println("A problem occurred: " + e.getMessage());
+        }
+    }
+
+    /**
+     * ToolRunner override method which warms up the FileSystem, stages the jar and starts the HTTP server.
+     *
+     * @param args Command-line arguments.
+     * @return int if the server stopped.
+     * @throws Exception will be caught in the main.
+     */
+    @Override
+    public int run(String[] args) throws Exception {
+
+        // Serve until the JVM is stopped, then let running requests finish for a second.
+        this.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                PhredCalculatorServer.this.stop(1);
+            }
+        });
+        Thread.currentThread().join();
+        return 0;
+    }
+
+    /**
+     * Warms up the FileSystem, stages the jar, schedules the removal of finished jobs and starts the HTTP server.
+     *
+     * @return HttpServer that has been started.
+     * @throws IOException When the jar can not be staged or the server can not be started.
+     */
+    HttpServer start()
+            throws IOException {
+
+        // Initialize the cached FileSystem once and stage the jar.
+        Configuration conf = this.getConf();
+        FileSystem hdfs = FileSystem.get(conf);
+        this.stagedJar = this.stageJar(conf, hdfs);
+
+        // Check for finished jobs to remove every minute, or every ttl if that is shorter.
+        final long ttl = TimeUnit.SECONDS.toMillis(conf.getLong("server.job.ttl.seconds", 3600));
+        long period = Math.max(1000, Math.min(ttl, 60000));
+        this.evictionPool = Executors.newSingleThreadScheduledExecutor();
+        this.evictionPool.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictFinishedJobs(ttl);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+
+        // Only listen on the loopback address unless told otherwise.
+        this.server = HttpServer.create(new InetSocketAddress(conf.get("server.host", "127.0.0.1"),
+                conf.getInt("server.port", 8642)), 0);
+        this.server.createContext(JOBS_PATH, new JobsHandler());
+        this.requestPool = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.requestPool);
+        this.server.start();
+        LOG.info("Listening on " + this.server.getAddress() + JOBS_PATH);
+        return this.server;
+    }
+
+    /**
+     * Stops the HTTP server, waiting at most the given seconds for running requests, and shuts down its threads.
+     *
+     * @param delay Seconds to wait for running requests.
+     */
+    void stop(int delay) {
+        if (this.server != null) {
+            this.server.stop(delay);
+            this.server = null;
+        }
+        if (this.requestPool != null) {
+            this.requestPool.shutdownNow();
+            this.requestPool = null;
+        }
+        if (this.evictionPool != null) {
+            this.evictionPool.shutdownNow();
+            this.evictionPool = null;
+        }
+        LOG.info("Stopped");
+    }
+
+    /**
+     * Copies the jar containing this class to 'server.staging.dir' on the FileSystem, unless a copy with the same
+     * length and modification time is already there.
+     *
+     * @param conf The Configuration of the server.
+     * @param hdfs The FileSystem to stage on.
+     * @return Path of the staged jar, null when not running from a jar.
+     * @throws IOException When the jar can not be copied.
+     */
+    private Path stageJar(Configuration conf, FileSystem hdfs)
+            throws IOException {
+
+        String jar = ClassUtil.findContainingJar(ParallelPhredCalculator.class);
+        if (jar == null) {
+            LOG.info("Not running from a jar, jobs use the classpath of the server");
+            return null;
+        }
+        File localJar = new File(jar);
+        Path staged = hdfs.makeQualified(new Path(conf.get("server.staging.dir", "/tmp/PhredCalculator"),
+                localJar.getName()));
+        if (!hdfs.exists(staged) || hdfs.getFileStatus(staged).getLen() != localJar.length()
+                || hdfs.getFileStatus(staged).getModificationTime() != localJar.lastModified()) {
+            hdfs.copyFromLocalFile(false, true, new Path(localJar.toURI()), staged);
+            hdfs.setTimes(staged, localJar.lastModified(), -1);
+        }
+        LOG.info("Staged " + jar + " as " + staged);
+        return staged;
+    }
+
+    /**
+     * Creates and submits a job. Inputs up to 'server.local.max.bytes' run in the local job runner and are waited
+     * for, larger inputs are submitted to the cluster with the staged jar. The output goes to a new directory below
+     * 'server.output.dir'.
+     *
+     * @param parameters The job options given in the request, only ALLOWED_OPTIONS are accepted.
+     * @return Job that has been submitted.
+     * @throws IOException          When the job can not be submitted.
+     * @throws InterruptedException When waiting for the job was interrupted.
+     * @throws ClassNotFoundException When the job classes can not be found.
+     */
+    private Job submit(Map<String, String> parameters)
+            throws IOException, InterruptedException, ClassNotFoundException {
+
+        // Every job gets its own copy of the warm configuration and its own output directory.
+        Configuration conf = new Configuration(this.getConf());
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (!ALLOWED_OPTIONS.contains(parameter.getKey())) {
+                throw new IllegalArgumentException("The option " + parameter.getKey() + " can not be set by a request");
+            }
+            conf.set(parameter.getKey(), parameter.getValue());
+        }
+        if (conf.get("input.files") == null) {
+            throw new IllegalArgumentException("The value of property input.files must not be null");
+        }
+        conf.set("output.dir", new Path(conf.get("server.output.dir", "/tmp/PhredCalculator/output"),
+                UUID.randomUUID().toString()).toString());
+        conf.setBoolean("output.overwrite", false);
+
+        // Pick the engine by input size.
+        Path input = new Path(conf.get("input.files"));
+        long inputBytes = 0;
+        PathFilter filter = ParallelPhredCalculator.getPathFilter(conf);
+        for (FileStatus file : SplitPlanner.listInputFiles(input.getFileSystem(conf), input, filter)) {
+            inputBytes += file.getLen();
+        }
+        boolean local = inputBytes <= conf.getLong("server.local.max.bytes", 256L * 1024 * 1024);
+        if (local) {
+            conf.set("mapreduce.framework.name", "local");
+        }
+
+        Job job = ParallelPhredCalculator.createJob(conf);
+        if (!local && this.stagedJar != null) {
+            job.getConfiguration().unset("mapreduce.job.jar");
+            job.addFileToClassPath(this.stagedJar);
+        }
+        LOG.info("Submitting " + (local ? "local" : "cluster") + " job for " + inputBytes + " input bytes");
+        if (local) {
+            job.waitForCompletion(false);
+        } else {
+            job.submit();
+        }
+        this.jobs.put(job.getJobID().toString(), job);
+        return job;
+    }
+
+    /**
+     * Removes jobs that finished more than the ttl ago, together with their output directory.
+     *
+     * @param ttl Time in milliseconds a finished job is kept.
+     */
+    void evictFinishedJobs(long ttl) {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Job>> entries = this.jobs.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Job> entry = entries.next();
+            try {
+                if (!this.finished.containsKey(entry.getKey()) && entry.getValue().isComplete()) {
+                    this.finished.put(entry.getKey(), now);
+                }
+                Long finishedAt = this.finished.get(entry.getKey());
+                if (finishedAt != null && now - finishedAt >= ttl) {
+                    entries.remove();
+                    this.finished.remove(entry.getKey());
+                    Path output = new Path(entry.getValue().getConfiguration().get("output.dir"));
+                    output.getFileSystem(entry.getValue().getConfiguration()).delete(output, true);
+                    LOG.info("Removed finished job " + entry.getKey());
+                }
+            } catch (IOException e) {
+                LOG.warn("Could not check job " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of jobs the server keeps.
+     *
+     * @return int with the amount of jobs.
+     */
+    int getJobCount() {
+        return this.jobs.size();
+    }
+
+    /**
+     * Describes the state of a job, followed by the phred scores once the job succeeded.
+     *
+     * @param job The Job to describe.
+     * @return String with 'name\tvalue' lines.
+     * @throws IOException          When the job state or result can not be read.
+     * @throws InterruptedException When connection was interrupted.
+     */
+    private String describe(Job job)
+            throws IOException, InterruptedException {
+
+        StringBuilder description = new StringBuilder();
+        description.append("job_id\t").append(job.getJobID()).append('\n');
+        description.append("state\t").append(job.getJobState()).append('\n');
+        description.append("map_progress\t").append(job.mapProgress()).append('\n');
+        description.append("reduce_progress\t").append(job.reduceProgress()).append('\n');
+        description.append("output_dir\t").append(job.getConfiguration().get("output.dir")).append('\n');
+        if (job.isComplete() && job.isSuccessful()) {
+            Path result = new Path(job.getConfiguration().get("output.dir"), "PhredCalculator.fastqc");
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            try (FSDataInputStream in = result.getFileSystem(job.getConfiguration()).open(result)) {
+                IOUtils.copyBytes(in, contents, 4096, false);
+            }
+            description.append('\n').append(new String(contents.toByteArray(), StandardCharsets.UTF_8));
+        }
+        return description.toString();
+    }
+
+    /**
+     * Parses an url encoded 'name=value&amp;name=value' string.
+     *
+     * @param encoded    The encoded string, may be null.
+     * @param parameters Map the parameters are added to.
+     * @throws IOException When the string can not be decoded.
+     */
+    private static void parseParameters(String encoded, Map<String, String> parameters)
+            throws IOException {
+
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        }
+    }
+
+    /**
+     * JobsHandler
+     *
+     * Handles the requests on the jobs endpoint.
+     */
+    private class JobsHandler implements HttpHandler {
+
+        /**
+         * Override method that submits a job on POST /jobs and describes a job on GET /jobs/[job id].
+         *
+         * @param exchange The HTTP request and response.
+         * @throws IOException When the response can not be written.
+         */
+        @Override
+        public void handle(HttpExchange exchange)
+                throws IOException {
+
+            int status;
+            String body;
+            try {
+                String path = exchange.getRequestURI().getPath();
+                if ("POST".equals(exchange.getRequestMethod()) && path.equals(JOBS_PATH)) {
+
+                    // Read the parameters from the query string and the form body.
+                    Map<String, String> parameters = new HashMap<>();
+                    parseParameters(exchange.getRequestURI().getRawQuery(), parameters);
+                    ByteArrayOutputStream form = new ByteArrayOutputStream();
+                    try (InputStream in = exchange.getRequestBody()) {
+                        IOUtils.copyBytes(in, form, 4096, false);
+                    }
+                    parseParameters(new String(form.toByteArray(), StandardCharsets.UTF_8), parameters);
+
+                    // Local jobs are done and return their result, cluster jobs are accepted.
+                    Job job = submit(parameters);
+                    status = job.isComplete() ? 200 : 202;
+                    body = describe(job);
+                } else if ("GET".equals(exchange.getRequestMethod()) && path.startsWith(JOBS_PATH + "/")) {
+                    Job job = jobs.get(path.substring(JOBS_PATH.length() + 1));
+                    status = job == null ? 404 : 200;
+                    body = job == null ? "Unknown job\n" : describe(job);
+                } else {
+                    status = 405;
+                    body = "Use POST " + JOBS_PATH + " or GET " + JOBS_PATH + "/[job id]\n";
+                }
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                body = e.getMessage() + "\n";
+            } catch (Exception e) {
+                LOG.error("Request failed", e);
+                status = 500;
+                body = "A problem occurred: " + e.getMessage() + "\n";
+            }
+
+            // Write the plain text response.
+            byte[] response = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        }
+    }
+}
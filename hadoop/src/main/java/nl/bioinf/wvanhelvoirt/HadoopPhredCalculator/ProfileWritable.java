@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import nl.bioinf.wvanhelvoirt.HadoopPhredCalculator.core.QualityProfile;
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * ProfileWritable
+ *
+ * A Writable wrapping a QualityProfile, which is passed on in the binary form of QualityProfile.serialize.
+ *
+ * @author Wout van Helvoirt
+ */
+public class ProfileWritable implements Writable {
+
+    /** The wrapped QualityProfile. */
+    private QualityProfile profile;
+
+    /**
+     * Constructor used when the value is read as Writable.
+     */
+    public ProfileWritable() {
+    }
+
+    /**
+     * Constructor that wraps a QualityProfile.
+     *
+     * @param profile The QualityProfile to wrap.
+     */
+    public ProfileWritable(QualityProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Returns the wrapped QualityProfile, every read gives a new instance.
+     *
+     * @return QualityProfile that is wrapped.
+     */
+    public QualityProfile get() {
+        return this.profile;
+    }
+
+    /**
+     * Override method that writes the QualityProfile in its binary form.
+     *
+     * @param out The DataOutput to write to.
+     * @throws IOException When the profile can not be written.
+     */
+    @Override
+    public void write(DataOutput out)
+            throws IOException {
+
+        this.profile.serialize(out);
+    }
+
+    /**
+     * Override method that reads a QualityProfile from its binary form.
+     *
+     * @param in The DataInput to read from.
+     * @throws IOException When the profile can not be read.
+     */
+    @Override
+    public void readFields(DataInput in)
+            throws IOException {
+
+        this.profile = QualityProfile.deserialize(in);
+    }
+}
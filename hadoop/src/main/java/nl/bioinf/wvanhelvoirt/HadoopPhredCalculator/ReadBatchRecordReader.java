@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.IOException;
+
+/**
+ * ReadBatchRecordReader
+ *
+ * This is an abstract RecordReader for read formats other than fastq. Subclasses decode reads and pass them to
+ * appendRead(), which adds them to the value as four fastq lines with the phred scores encoded using 'ascii.base'. This
+ * way the ReadMapper processes every format the same way, without converting the input files first.
+ *
+ * @author Wout van Helvoirt
+ */
+public abstract class ReadBatchRecordReader extends RecordReader<LongWritable, Text> {
+
+    /** Base ascii value for phred score encoding. */
+    private int asciiBase;
+    /** Maximum amount of reads per value. */
+    private int readsPerRecord;
+    /** The LongWritable key. */
+    private LongWritable key;
+    /** The Text containing lines. */
+    private Text value;
+    /** The reads of the current value. */
+    private StringBuilder reads;
+    /** Amount of reads in the current value. */
+    private int readCount;
+    /** Start position. */
+    private long start;
+    /** End position. */
+    private long end;
+
+    /**
+     * Override method for instantiation.
+     *
+     * @param inputSplit The InputSplit to read.
+     * @param context    The context for this task.
+     * @throws IOException          Returns default exception.
+     * @throws InterruptedException Returns default exception.
+     */
+    @Override
+    public void initialize(InputSplit inputSplit, TaskAttemptContext context)
+            throws IOException, InterruptedException {
+
+        Configuration conf = context.getConfiguration();
+        FileSplit split = (FileSplit) inputSplit;
+        this.asciiBase = conf.getInt("ascii.base", 64);
+        this.readsPerRecord = conf.getInt("reads.per.record", 2000);
+        this.reads = new StringBuilder();
+        this.start = split.getStart();
+        this.end = this.start + split.getLength();
+        this.open(split, context);
+    }
+
+    /**
+     * Opens the split for reading.
+     *
+     * @param split   The FileSplit to read.
+     * @param context The context for this task.
+     * @throws IOException          If the split can not be opened.
+     * @throws InterruptedException If there is an error.
+     */
+    protected abstract void open(FileSplit split, TaskAttemptContext context)
+            throws IOException, InterruptedException;
+
+    /**
+     * Decodes the next read of the split and adds it with appendRead(). Reads without quality scores or that should
+     * be skipped are not added, but do not end the split.
+     *
+     * @return boolean false if the end of the split has been reached.
+     * @throws IOException          If there is an error reading the file.
+     * @throws InterruptedException If there is an error.
+     */
+    protected abstract boolean nextRead()
+            throws IOException, InterruptedException;
+
+    /**
+     * Returns the current position in the file.
+     *
+     * @return long with the position.
+     * @throws IOException If the position can not be read.
+     */
+    protected abstract long getPosition()
+            throws IOException;
+
+    /**
+     * Adds a read to the current value as four fastq lines.
+     *
+     * @param name     The read name.
+     * @param sequence The bases of the read.
+     * @param phred    The phred score of each base.
+     * @param length   The amount of bases.
+     * @param reverse  Whether the read is stored reverse complemented and should be turned back.
+     */
+    protected void appendRead(String name, byte[] sequence, byte[] phred, int length, boolean reverse) {
+        this.readCount++;
+        this.reads.append('@').append(name).append('\n');
+        for (int i = 0; i < length; i++) {
+            this.reads.append(reverse ? complement((char) sequence[length - 1 - i]) : (char) sequence[i]);
+        }
+        this.reads.append("\n+\n");
+        for (int i = 0; i < length; i++) {
+            this.reads.append((char) (phred[reverse ? length - 1 - i : i] + this.asciiBase));
+        }
+        this.reads.append('\n');
+    }
+
+    /**
+     * Returns the complementary base, other characters are returned unchanged.
+     *
+     * @param base The base to complement.
+     * @return char with the complementary base.
+     */
+    private static char complement(char base) {
+        switch (base) {
+            case 'A':
+                return 'T';
+            case 'T':
+                return 'A';
+            case 'C':
+                return 'G';
+            case 'G':
+                return 'C';
+            default:
+                return base;
+        }
+    }
+
+    /**
+     * Override method that reads up to 'reads.per.record' reads into the value.
+     *
+     * @return Boolean whether reads were read or not.
+     * @throws IOException          If there is an error reading the file.
+     * @throws InterruptedException If there is an error.
+     */
+    @Override
+    public boolean nextKeyValue()
+            throws IOException, InterruptedException {
+
+        // Initialize key and value.
+        if (this.key == null) {
+            this.key = new LongWritable();
+        }
+        if (this.value == null) {
+            this.value = new Text();
+        }
+        this.key.set(this.getPosition());
+        this.reads.setLength(0);
+        this.readCount = 0;
+
+        // Decode reads until the value is full or the split has ended.
+        boolean more = true;
+        while (more && this.readCount < this.readsPerRecord) {
+            more = this.nextRead();
+        }
+        if (this.readCount == 0) {
+            this.key = null;
+            this.value = null;
+            return false;
+        }
+        this.value.set(this.reads.toString());
+        return true;
+    }
+
+    /**
+     * Override method that returns a LongWritable as key.
+     *
+     * @return LongWritable key.
+     * @throws IOException          Returns default exception.
+     * @throws InterruptedException Returns default exception.
+     */
+    @Override
+    public LongWritable getCurrentKey()
+            throws IOException, InterruptedException {
+
+        return this.key;
+    }
+
+    /**
+     * Override method that returns the current value.
+     *
+     * @return Text containing the reads as fastq lines.
+     * @throws IOException          Returns default exception.
+     * @throws InterruptedException Returns default exception.
+     */
+    @Override
+    public Text getCurrentValue()
+            throws IOException, InterruptedException {
+
+        return this.value;
+    }
+
+    /**
+     * Override method that returns the progress through the split.
+     *
+     * @return Float between 0.0 and 1.0.
+     * @throws IOException          Returns default exception.
+     * @throws InterruptedException Returns default exception.
+     */
+    @Override
+    public float getProgress()
+            throws IOException, InterruptedException {
+
+        // Return progress state.
+        if (this.start == this.end) {
+            return 0.0f;
+        } else {
+            return Math.max(0.0f, Math.min(1.0f, (this.getPosition() - this.start) / (float) (this.end - this.start)));
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import nl.bioinf.wvanhelvoirt.HadoopPhredCalculator.core.QualityProfile;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ReadMapper
+ *
+ * The Mapper class will receive RecordReader items containing reads (one read is 4 lines), and process them.
+ * The phred sums and counts of all items of the task are combined in one QualityProfile, which will be wrapped in a
+ * ProfileWritable passed on to the Reducer once the task is done. The key tells the Reducer which metric the value
+ * belongs to. Read prefixes are counted in a HeavyHitterSketch, k-mers of up to KmerCounts.MAX_K bases exactly in
+ * KmerCounts and longer k-mers in a HeavyHitterSketch, and the distinct reads of each input file in a HyperLogLog,
+ * these are passed on at the same time.
+ *
+ * @author Wout van Helvoirt
+ */
+public class ReadMapper extends Mapper<LongWritable, Text, Text, MetricWritable> {
+
+    /** Key of the phred score sums and counts per base. */
+    public static final String PHRED_KEY = "phred";
+    /** Key of the overrepresented read prefix sketch. */
+    public static final String SEQUENCES_KEY = "overrepresented_sequences";
+    /** Key of the overrepresented k-mer counts or sketch. */
+    public static final String KMERS_KEY = "overrepresented_kmers";
+    /** Key of the distinct read HyperLogLogs per file. */
+    public static final String DUPLICATION_KEY = "duplication";
+
+    /** Phred score sums and counts per base of all reads in this task. */
+    private QualityProfile profile;
+    /** Sketch of the read prefixes, null if disabled. */
+    private HeavyHitterSketch sequenceSketch;
+    /** Exact counts of the k-mers, null if disabled or the k-mers are longer than KmerCounts.MAX_K. */
+    private KmerCounts kmerCounts;
+    /** Sketch of the k-mers longer than KmerCounts.MAX_K, null otherwise. */
+    private HeavyHitterSketch kmerSketch;
+    /** Amount of bases of each read used as prefix. */
+    private int prefixLength;
+    /** Length of the k-mers. */
+    private int kmerSize;
+    /** Distinct read HyperLogLog per input file path, null if disabled. */
+    private Map<String, HyperLogLog> distinctReads;
+    /** Total amount of reads per input file path. */
+    private Map<String, Long> totalReads;
+    /** Precision of the HyperLogLogs. */
+    private int duplicationPrecision;
+    /** Amount of bases of each read used for duplication, 0 for the whole read. */
+    private int duplicationLength;
+
+    /**
+     * Override method that creates the QualityProfile and the sketches if overrepresented sequence or duplication
+     * detection is enabled.
+     *
+     * @param context Context containing job information.
+     * @throws IOException          When something went wrong.
+     * @throws InterruptedException When connection was interrupted.
+     */
+    @Override
+    protected void setup(Context context)
+            throws IOException, InterruptedException {
+
+        // Every task gets sketches of the same fixed size, so they can be merged in the Reducer.
+        Configuration conf = context.getConfiguration();
+        this.profile = new QualityProfile(conf.getInt("ascii.base", 64));
+        if (conf.getBoolean("overrepresented.enabled", false)) {
+            int depth = conf.getInt("sketch.depth", 4);
+            int width = conf.getInt("sketch.width", 8192);
+            int capacity = conf.getInt("sketch.capacity", 100);
+            this.sequenceSketch = new HeavyHitterSketch(depth, width, capacity);
+            this.prefixLength = conf.getInt("overrepresented.prefix.length", 50);
+            this.kmerSize = conf.getInt("kmer.size", 7);
+
+            // Short k-mers fit in a table of exact counters, a sketch of that size would only give collisions.
+            if (this.kmerSize <= KmerCounts.MAX_K) {
+                this.kmerCounts = new KmerCounts(this.kmerSize);
+            } else {
+                this.kmerSketch = new HeavyHitterSketch(depth, width, capacity);
+            }
+        }
+        if (conf.getBoolean("duplication.enabled", true)) {
+            this.distinctReads = new HashMap<>();
+            this.totalReads = new HashMap<>();
+            this.duplicationPrecision = conf.getInt("duplication.precision", 12);
+            this.duplicationLength = conf.getInt("duplication.prefix.length", 0);
+        }
+    }
+
+    /**
+     * Override method that processes one RecordReader item and adds it to the QualityProfile and sketches.
+     *
+     * @param key     LongWritable as key.
+     * @param value   Text containing reads (one read is 4 lines) from the fastq file.
+     * @param context Context containing job information.
+     * @throws IOException          When something went wrong.
+     * @throws InterruptedException When connection was interrupted.
+     */
+    @Override
+    public void map(LongWritable key, Text value, Context context)
+            throws IOException, InterruptedException {
+
+        // Add the phred scores straight from the bytes of the value, an incomplete last record is left out.
+        this.profile.add(ByteBuffer.wrap(value.getBytes(), 0, value.getLength()));
+        if (this.sequenceSketch == null && this.distinctReads == null) {
+            return;
+        }
+
+        // Look up the duplication counters of the file these reads belong to.
+        HyperLogLog fileDistinctReads = null;
+        long fileReads = 0;
+        String file = null;
+        if (this.distinctReads != null) {
+            file = getInputFile(context);
+            fileDistinctReads = this.distinctReads.get(file);
+            if (fileDistinctReads == null) {
+                fileDistinctReads = new HyperLogLog(this.duplicationPrecision);
+                this.distinctReads.put(file, fileDistinctReads);
+                this.totalReads.put(file, 0L);
+            }
+        }
+
+        // The sketches need the base lines, only then the value is split in lines.
+        String[] readData = value.toString().split("\\n");
+        for (int i = 0; i + 3 < readData.length; i += 4) {
+
+            // If the length of the base line equals the length of the phred line.
+            if (readData[i + 1].length() == readData[i + 3].length()) {
+                if (this.sequenceSketch != null) {
+                    this.offerSequence(readData[i + 1]);
+                }
+                if (fileDistinctReads != null) {
+                    int end = readData[i + 1].length();
+                    if (this.duplicationLength > 0) {
+                        end = Math.min(end, this.duplicationLength);
+                    }
+                    fileDistinctReads.add(SequenceHash.hash64(readData[i + 1], 0, end));
+                    fileReads++;
+                }
+            }
+        }
+        if (file != null) {
+            this.totalReads.put(file, this.totalReads.get(file) + fileReads);
+        }
+    }
+
+    /**
+     * Override method that passes the QualityProfile and sketches on to the Reducer once all reads of this task are
+     * processed.
+     *
+     * @param context Context containing job information.
+     * @throws IOException          When something went wrong.
+     * @throws InterruptedException When connection was interrupted.
+     */
+    @Override
+    protected void cleanup(Context context)
+            throws IOException, InterruptedException {
+
+        // Pass on the QualityProfile in its binary form.
+        context.write(new Text(PHRED_KEY), new MetricWritable(new ProfileWritable(this.profile)));
+
+        if (this.sequenceSketch != null && this.sequenceSketch.getTotal() > 0) {
+            context.write(new Text(SEQUENCES_KEY), new MetricWritable(this.sequenceSketch));
+            context.write(new Text(KMERS_KEY), new MetricWritable(this.kmerCounts != null ? this.kmerCounts
+                    : this.kmerSketch));
+        }
+
+        // Pass on the duplication counters of each input file.
+        if (this.distinctReads != null) {
+            for (Map.Entry<String, HyperLogLog> entry : this.distinctReads.entrySet()) {
+                context.write(new Text(DUPLICATION_KEY), new MetricWritable(new DuplicationWritable(entry.getKey(),
+                        this.totalReads.get(entry.getKey()), entry.getValue())));
+            }
+        }
+    }
+
+    /**
+     * Returns the path of the file the current reads are from. The whole path is used, so files with the same name in
+     * different directories are kept apart.
+     *
+     * @param context Context containing job information.
+     * @return String with the file path.
+     */
+    static String getInputFile(Context context) {
+        InputSplit split = context.getInputSplit();
+        if (split instanceof FileSplit) {
+            return toFileKey(((FileSplit) split).getPath());
+        }
+        String file = context.getConfiguration().get("mapreduce.map.input.file");
+        return file == null ? "unknown" : toFileKey(new Path(file));
+    }
+
+    /**
+     * Returns the path of a file without scheme and authority, which identifies the file in the duplication output.
+     *
+     * @param path The Path of the file.
+     * @return String with the file path.
+     */
+    static String toFileKey(Path path) {
+        return Path.getPathWithoutSchemeAndAuthority(path).toString();
+    }
+
+    /**
+     * Adds the prefix and all k-mers without ambiguous bases of a read sequence to the sketches or counts.
+     *
+     * @param sequence The base line of a read.
+     */
+    private void offerSequence(String sequence) {
+        this.sequenceSketch.offer(sequence, 0, Math.min(sequence.length(), this.prefixLength));
+        if (this.kmerCounts != null) {
+            this.kmerCounts.add(sequence);
+            return;
+        }
+
+        // Track the last N, so windows containing one are skipped.
+        int lastN = -1;
+        for (int j = 0; j < sequence.length(); j++) {
+            if (sequence.charAt(j) == 'N') {
+                lastN = j;
+            }
+            int start = j - this.kmerSize + 1;
+            if (start >= 0 && lastN < start) {
+                this.kmerSketch.offer(sequence, start, j + 1);
+            }
+        }
+    }
+}
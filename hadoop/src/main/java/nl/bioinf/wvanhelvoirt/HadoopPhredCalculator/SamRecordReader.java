@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+
+import java.io.IOException;
+
+/**
+ * SamRecordReader
+ *
+ * This is a custom class to read the reads of a SAM text file split. Header lines, reads without qualities and
+ * secondary or supplementary alignments are skipped, reverse strand reads are turned back to their sequenced
+ * orientation.
+ *
+ * @author Wout van Helvoirt
+ */
+public class SamRecordReader extends ReadBatchRecordReader {
+
+    /** Flag of reads mapped to the reverse strand. */
+    static final int FLAG_REVERSE = 0x10;
+    /** Flags of secondary and supplementary alignments. */
+    static final int FLAG_SKIP = 0x100 | 0x800;
+    /** Offset of the SAM quality characters. */
+    private static final int SAM_QUALITY_OFFSET = 33;
+
+    /** The LineRecordReader reading the SAM lines. */
+    private LineRecordReader in;
+    /** Buffer for the sequence of a read. */
+    private byte[] sequence = new byte[0];
+    /** Buffer for the phred scores of a read. */
+    private byte[] phred = new byte[0];
+
+    /**
+     * Opens the split with a LineRecordReader, which takes care of lines crossing split boundaries.
+     *
+     * @param split   The FileSplit to read.
+     * @param context The context for this task.
+     * @throws IOException          If the split can not be opened.
+     * @throws InterruptedException If there is an error.
+     */
+    @Override
+    protected void open(FileSplit split, TaskAttemptContext context)
+            throws IOException, InterruptedException {
+
+        this.in = new LineRecordReader();
+        this.in.initialize(split, context);
+    }
+
+    /**
+     * Reads the next SAM line and adds it if it is a primary read with qualities.
+     *
+     * @return boolean false if the end of the split has been reached.
+     * @throws IOException          If there is an error reading the file.
+     * @throws InterruptedException If there is an error.
+     */
+    @Override
+    protected boolean nextRead()
+            throws IOException, InterruptedException {
+
+        if (!this.in.nextKeyValue()) {
+            return false;
+        }
+        Text line = this.in.getCurrentValue();
+        if (line.getLength() == 0 || line.charAt(0) == '@') {
+            return true;
+        }
+
+        // QNAME FLAG RNAME POS MAPQ CIGAR RNEXT PNEXT TLEN SEQ QUAL, skip alignments without sequence or qualities.
+        String[] fields = line.toString().split("\t", 12);
+        if (fields.length < 11) {
+            throw new IOException("Malformed SAM line at position " + this.in.getCurrentKey());
+        }
+        int flag = Integer.parseInt(fields[1]);
+        String bases = fields[9];
+        String qualities = fields[10];
+        if ((flag & FLAG_SKIP) != 0 || "*".equals(bases) || "*".equals(qualities)
+                || bases.length() != qualities.length()) {
+            return true;
+        }
+        int length = bases.length();
+        if (this.sequence.length < length) {
+            this.sequence = new byte[length];
+            this.phred = new byte[length];
+        }
+        for (int i = 0; i < length; i++) {
+            this.sequence[i] = (byte) bases.charAt(i);
+            this.phred[i] = (byte) (qualities.charAt(i) - SAM_QUALITY_OFFSET);
+        }
+        this.appendRead(fields[0], this.sequence, this.phred, length, (flag & FLAG_REVERSE) != 0);
+        return true;
+    }
+
+    /**
+     * Returns the position of the last read line.
+     *
+     * @return long with the position.
+     * @throws IOException If the position can not be read.
+     */
+    @Override
+    protected long getPosition()
+            throws IOException {
+
+        return this.in.getCurrentKey() == null ? 0 : this.in.getCurrentKey().get();
+    }
+
+    /**
+     * Closes any connection.
+     *
+     * @throws IOException Returns default exception.
+     */
+    @Override
+    public void close()
+            throws IOException {
+
+        if (this.in != null) {
+            this.in.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+/**
+ * SequenceHash
+ *
+ * Utility class that hashes (parts of) sequences to well mixed 64 bit values, used by the probabilistic sketches.
+ *
+ * @author Wout van Helvoirt
+ */
+public final class SequenceHash {
+
+    /** FNV-1a 64 bit offset basis. */
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    /** FNV-1a 64 bit prime. */
+    private static final long PRIME = 0x100000001b3L;
+
+    /**
+     * Private constructor, this class only contains static methods.
+     */
+    private SequenceHash() {
+    }
+
+    /**
+     * Hashes a complete sequence.
+     *
+     * @param sequence The sequence to hash.
+     * @return long containing the 64 bit hash.
+     */
+    public static long hash64(CharSequence sequence) {
+        return hash64(sequence, 0, sequence.length());
+    }
+
+    /**
+     * Hashes the characters between start (inclusive) and end (exclusive) of a sequence without creating a substring.
+     *
+     * @param sequence The sequence to hash.
+     * @param start    First character to include.
+     * @param end      Character after the last one to include.
+     * @return long containing the 64 bit hash.
+     */
+    public static long hash64(CharSequence sequence, int start, int end) {
+        long hash = OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            hash ^= sequence.charAt(i);
+            hash *= PRIME;
+        }
+
+        // FNV alone distributes the lower bits poorly, so finish with the MurmurHash3 64 bit mixer.
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.yarn.api.records.NodeReport;
+import org.apache.hadoop.yarn.api.records.NodeState;
+import org.apache.hadoop.yarn.client.api.YarnClient;
+import org.apache.hadoop.yarn.exceptions.YarnException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SplitPlanner
+ *
+ * This class decides how much work each mapper gets. The split size is based on the total input size, the HDFS block
+ * size, the available YARN vcores and a target task duration, so short inputs are not spread over many short-lived
+ * tasks and large inputs still fill the cluster. An explicit 'reads.per.map' value always overrides the plan.
+ *
+ * @author Wout van Helvoirt
+ */
+public class SplitPlanner {
+
+    /** The logger. */
+    private static final Log LOG = LogFactory.getLog(SplitPlanner.class);
+    /** Amount of reads sampled to estimate the bytes per read. */
+    private static final int SAMPLE_READS = 1000;
+
+    /** The Configuration. */
+    private final Configuration conf;
+    /** Planned bytes per split. */
+    private long splitBytes;
+    /** Planned reads per split. */
+    private int readsPerMap;
+
+    /**
+     * Constructor that sets the configuration used for planning.
+     *
+     * @param conf The Configuration of the job.
+     */
+    public SplitPlanner(Configuration conf) {
+        this.conf = conf;
+    }
+
+    /**
+     * Plans the split size for all files matching the filter in the input path.
+     *
+     * @param input  Input file, directory or glob.
+     * @param filter PathFilter selecting the input files.
+     * @throws IOException When the input can not be read.
+     */
+    public void plan(Path input, PathFilter filter)
+            throws IOException {
+
+        // Collect the input files, their total size and the largest block size.
+        FileSystem fs = input.getFileSystem(this.conf);
+        List<FileStatus> files = listInputFiles(fs, input, filter);
+        long totalBytes = 0;
+        long blockSize = 0;
+        for (FileStatus file : files) {
+            totalBytes += file.getLen();
+            blockSize = Math.max(blockSize, file.getBlockSize());
+        }
+        if (blockSize == 0) {
+            blockSize = fs.getDefaultBlockSize(input);
+        }
+        long bytesPerRead = this.sampleBytesPerRead(fs, files);
+
+        // An explicit amount of reads per mapper overrides the plan.
+        if (this.conf.get("reads.per.map") != null) {
+            this.readsPerMap = this.conf.getInt("reads.per.map", 2000);
+            this.splitBytes = this.readsPerMap * bytesPerRead;
+            LOG.info("Using reads.per.map=" + this.readsPerMap + " given by the user");
+            return;
+        }
+
+        // A task should run for the target duration, but the tasks must be spread over all vcores.
+        int vcores = this.getAvailableVcores();
+        long durationBytes = this.conf.getLong("split.bytes.per.second", 16L * 1024 * 1024)
+                * this.conf.getInt("split.target.seconds", 60);
+        long waveBytes = (totalBytes + vcores - 1) / vcores;
+        this.splitBytes = Math.min(durationBytes, waveBytes);
+
+        // Never go below one block to amortize the task startup, above it round down to whole blocks.
+        if (this.splitBytes <= blockSize) {
+            this.splitBytes = blockSize;
+        } else {
+            this.splitBytes -= this.splitBytes % blockSize;
+        }
+        this.readsPerMap = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 4, this.splitBytes / bytesPerRead));
+
+        // Splits only cross files when they are combined, otherwise every file gets at least one mapper.
+        long mappers = (totalBytes + this.splitBytes - 1) / this.splitBytes;
+        if (!this.conf.getBoolean("combine.files", false)) {
+            mappers = 0;
+            for (FileStatus file : files) {
+                mappers += Math.max(1, (file.getLen() + this.splitBytes - 1) / this.splitBytes);
+            }
+        }
+        LOG.info("Planned splits for " + files.size() + " files with " + totalBytes + " bytes, block size "
+                + blockSize + ", " + vcores + " vcores and about " + bytesPerRead + " bytes per read");
+        LOG.info("Using " + this.splitBytes + " bytes (" + this.readsPerMap + " reads) per mapper, about "
+                + mappers + " mappers (task target " + durationBytes + " bytes, one wave " + waveBytes + " bytes)");
+    }
+
+    /**
+     * Returns the planned bytes per split.
+     *
+     * @return long with the bytes per split.
+     */
+    public long getSplitBytes() {
+        return this.splitBytes;
+    }
+
+    /**
+     * Returns the planned reads per split.
+     *
+     * @return int with the reads per split.
+     */
+    public int getReadsPerMap() {
+        return this.readsPerMap;
+    }
+
+    /**
+     * Lists the files matching the filter in a file, directory or glob path.
+     *
+     * @param fs     The FileSystem of the path.
+     * @param input  Input file, directory or glob.
+     * @param filter PathFilter selecting the input files.
+     * @return List with the FileStatus of each input file.
+     * @throws IOException When the input can not be listed.
+     */
+    static List<FileStatus> listInputFiles(FileSystem fs, Path input, PathFilter filter)
+            throws IOException {
+
+        List<FileStatus> files = new ArrayList<>();
+        FileStatus[] matches = fs.globStatus(input);
+        if (matches != null) {
+            for (FileStatus match : matches) {
+                if (match.isDirectory()) {
+                    for (FileStatus file : fs.listStatus(match.getPath(), filter)) {
+                        if (file.isFile()) {
+                            files.add(file);
+                        }
+                    }
+                } else if (filter.accept(match.getPath())) {
+                    files.add(match);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Estimates the amount of bytes per read from the first reads of the first non-empty file. The estimate is only
+     * meaningful for the line based fastq and SAM formats, the other formats are never split.
+     *
+     * @param fs    The FileSystem of the files.
+     * @param files List with the input files.
+     * @return long with the bytes per read, at least 1.
+     * @throws IOException When the file can not be read.
+     */
+    private long sampleBytesPerRead(FileSystem fs, List<FileStatus> files)
+            throws IOException {
+
+        // A fastq read takes four lines, a SAM read one.
+        int linesPerRead = "sam".equals(this.conf.get("input.format")) ? 1 : 4;
+
+        for (FileStatus file : files) {
+            if (file.getLen() == 0) {
+                continue;
+            }
+            long bytes = 0;
+            int lines = 0;
+            try (FSDataInputStream in = fs.open(file.getPath())) {
+                LineReader reader = new LineReader(in, this.conf);
+                Text line = new Text();
+                int size;
+                while (lines < linesPerRead * SAMPLE_READS && (size = reader.readLine(line)) > 0) {
+                    bytes += size;
+                    lines++;
+                }
+            }
+            if (lines >= linesPerRead) {
+                return Math.max(1, bytes / (lines / linesPerRead));
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the amount of vcores available for the job. These are given by 'split.vcores', the local processors
+     * when running in the local job runner, or the vcores that are free on the running YARN nodes. On a shared cluster
+     * the vcores in use by other applications can not take tasks of this job, so they are left out.
+     *
+     * @return int with the amount of vcores, at least 1.
+     */
+    private int getAvailableVcores() {
+        if (this.conf.get("split.vcores") != null) {
+            return Math.max(1, this.conf.getInt("split.vcores", 1));
+        }
+        if ("local".equals(this.conf.get("mapreduce.framework.name", "local"))) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        // Ask the ResourceManager, fall back to the local processors if it can not be reached.
+        YarnClient yarnClient = YarnClient.createYarnClient();
+        try {
+            yarnClient.init(this.conf);
+            yarnClient.start();
+            int vcores = 0;
+            for (NodeReport node : yarnClient.getNodeReports(NodeState.RUNNING)) {
+                int used = node.getUsed() == null ? 0 : node.getUsed().getVirtualCores();
+                vcores += Math.max(0, node.getCapability().getVirtualCores() - used);
+            }
+            return Math.max(1, vcores);
+        } catch (YarnException | IOException e) {
+            LOG.warn("Could not get the available vcores from YARN: " + e.getMessage());
+            return Runtime.getRuntime().availableProcessors();
+        } finally {
+            yarnClient.stop();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import nl.bioinf.wvanhelvoirt.HadoopPhredCalculator.core.QualityProfile;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.CreateFlag;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileContext;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * StreamingPhredCalculator
+ *
+ * This class follows the fastq files in an input directory, HDFS or local, while a run is still being written. Every
+ * interval the data appended since the last recorded offset of each file is read, complete reads are added to the
+ * running phred sums in memory and an updated 'PhredCalculator.fastqc' is published atomically in the output
+ * directory. An incomplete read at the end of a file is read again once it has been written completely. The offsets
+ * and phred sums are published as '_PhredCalculator.state' next to the output, so a restarted run continues where the
+ * previous one stopped.
+ *
+ * @author Wout van Helvoirt
+ */
+public final class StreamingPhredCalculator extends Configured implements Tool {
+
+    /** The logger. */
+    private static final Log LOG = LogFactory.getLog(StreamingPhredCalculator.class);
+    /** Name of the published profile. */
+    static final String OUTPUT_NAME = "PhredCalculator.fastqc";
+    /** Name of the published offsets and phred sums, hidden from Hadoop input listings by the underscore. */
+    static final String STATE_NAME = "_PhredCalculator.state";
+    /** Name of the directory temporary files are written in before they are renamed. */
+    private static final String TEMPORARY_NAME = "_temporary";
+    /** Version of the state file. */
+    private static final int STATE_VERSION = 1;
+
+    /** Offset up to which each file has been processed. */
+    private final Map<Path, Long> offsets = new HashMap<>();
+    /** Phred score sums and counts per base of all processed reads. */
+    private QualityProfile profile;
+
+    /**
+     * Package-private constructor, necessary for the ToolRunner in main and the tests.
+     */
+    StreamingPhredCalculator() {
+    }
+
+    /**
+     * Main function for running the program.
+     *
+     * @param args the command line arguments.
+     */
+    public static void main(final String[] args) {
+
+        // Try to make a ToolRunner, so hadoop specific command-line arguments will be parsed.
+        try {
+            int res = ToolRunner.run(new Configuration(), new StreamingPhredCalculator(), args);
+            System.exit(res);
+        } catch (Exception e) {
+            System.out.println("A problem occurred: " + e.getMessage());
+        }
+    }
+
+    /**
+     * ToolRunner override method which polls the input and publishes the profile every interval.
+     *
+     * @param args Command-line arguments.
+     * @return int if the streaming is done.
+     * @throws Exception will be caught in the main.
+     */
+    @Override
+    public int run(String[] args) throws Exception {
+
+        // If 'input.files' and/or 'output.dir' not given, throw exception.
+        Configuration conf = this.getConf();
+        if (conf.get("input.files") == null || conf.get("output.dir") == null) {
+            throw new IllegalArgumentException("The value of property input.files and output.dir must not be null");
+        }
+        Path input = new Path(conf.get("input.files"));
+        Path output = new Path(conf.get("output.dir"));
+        FileSystem fs = input.getFileSystem(conf);
+        this.profile = new QualityProfile(conf.getInt("ascii.base", 64));
+        this.loadState(conf, new Path(output, STATE_NAME));
+        long interval = conf.getLong("streaming.interval.ms", 2000);
+        int iterations = conf.getInt("streaming.iterations", 0);
+
+        // Poll until stopped, or for the given amount of iterations.
+        for (int i = 0; iterations == 0 || i < iterations; i++) {
+            long started = System.currentTimeMillis();
+            long before = this.profile.getReads();
+            for (FileStatus file : SplitPlanner.listInputFiles(fs, input, new FastqPathFilter())) {
+                this.processAppended(fs, file);
+            }
+            if (this.profile.getReads() != before || i == 0) {
+                this.publish(conf, output);
+                LOG.info("Published profile of " + this.profile.getReads() + " reads from " + this.offsets.size()
+                        + " files");
+            }
+            Thread.sleep(Math.max(0, interval - (System.currentTimeMillis() - started)));
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the complete reads appended to a file since its last offset and records the new offset. The length in the
+     * listing of a file that is still being written can lag behind on HDFS, so the file is opened and read up to its
+     * visible length.
+     *
+     * @param fs   The FileSystem of the file.
+     * @param file The FileStatus of the file.
+     * @throws IOException When the file can not be read.
+     */
+    private void processAppended(FileSystem fs, FileStatus file)
+            throws IOException {
+
+        Long offset = this.offsets.get(file.getPath());
+        if (offset == null) {
+            offset = 0L;
+        }
+        try (FSDataInputStream in = fs.open(file.getPath())) {
+            long visible = in instanceof HdfsDataInputStream ? ((HdfsDataInputStream) in).getVisibleLength()
+                    : fs.getFileStatus(file.getPath()).getLen();
+            if (visible < offset) {
+                LOG.warn(file.getPath() + " became shorter than the processed " + offset + " bytes, skipping it");
+                return;
+            }
+            if (visible == offset) {
+                return;
+            }
+
+            // The QualityProfile only consumes complete reads, the rest is read again at the next poll.
+            in.seek(offset);
+            offset += this.profile.add(Channels.newChannel(in));
+        }
+        this.offsets.put(file.getPath(), offset);
+    }
+
+    /**
+     * Continues from the offsets and phred sums published by a previous run, if there are any.
+     *
+     * @param conf  The Configuration.
+     * @param state Path of the state file.
+     * @throws IOException When the state file can not be read.
+     */
+    private void loadState(Configuration conf, Path state)
+            throws IOException {
+
+        FileSystem fs = state.getFileSystem(conf);
+        if (!fs.exists(state)) {
+            return;
+        }
+        try (DataInputStream in = fs.open(state)) {
+            int version = in.readInt();
+            if (version != STATE_VERSION) {
+                throw new IOException("Unsupported state version " + version + " in " + state);
+            }
+            int files = in.readInt();
+            for (int i = 0; i < files; i++) {
+                this.offsets.put(new Path(Text.readString(in)), in.readLong());
+            }
+            QualityProfile previous = QualityProfile.deserialize(in);
+            if (previous.getAsciiBase() != this.profile.getAsciiBase()) {
+                throw new IllegalArgumentException("The state in " + state + " uses ascii base "
+                        + previous.getAsciiBase() + ", remove it to start over with another ascii base");
+            }
+            this.profile = previous;
+        }
+        LOG.info("Continuing with " + this.profile.getReads() + " reads from " + this.offsets.size() + " files");
+    }
+
+    /**
+     * Writes the current state and profile to temporary files and renames them into the output directory, so readers
+     * and restarts never see partially written files. The offsets and the phred sums are kept in one file, so a
+     * restart never counts reads twice. The temporary files are written in their own directory, which is removed
+     * afterwards together with any checksum files left by the rename.
+     *
+     * @param conf   The Configuration.
+     * @param output Path of the output directory.
+     * @throws IOException When the files can not be written.
+     */
+    private void publish(Configuration conf, Path output)
+            throws IOException {
+
+        Path temporaryDir = new Path(output, TEMPORARY_NAME);
+        Path temporaryState = new Path(temporaryDir, STATE_NAME);
+        Path temporaryOutput = new Path(temporaryDir, OUTPUT_NAME);
+        FileContext fc = FileContext.getFileContext(output.toUri(), conf);
+        fc.mkdir(temporaryDir, FileContext.DEFAULT_PERM, true);
+        EnumSet<CreateFlag> flags = EnumSet.of(CreateFlag.CREATE, CreateFlag.OVERWRITE);
+
+        // Write the offsets with the phred sums they belong to.
+        try (DataOutputStream out = fc.create(temporaryState, flags)) {
+            out.writeInt(STATE_VERSION);
+            out.writeInt(this.offsets.size());
+            for (Map.Entry<Path, Long> offset : this.offsets.entrySet()) {
+                Text.writeString(out, offset.getKey().toString());
+                out.writeLong(offset.getValue());
+            }
+            this.profile.serialize(out);
+        }
+        try (FSDataOutputStream out = fc.create(temporaryOutput, flags)) {
+            BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out));
+            for (Text line : CombineReducer.formatAverages(this.profile)) {
+                bw.write(line.toString());
+                bw.newLine();
+            }
+            bw.flush();
+        }
+        fc.rename(temporaryState, new Path(output, STATE_NAME), Options.Rename.OVERWRITE);
+        fc.rename(temporaryOutput, new Path(output, OUTPUT_NAME), Options.Rename.OVERWRITE);
+        fc.delete(temporaryDir, true);
+    }
+}
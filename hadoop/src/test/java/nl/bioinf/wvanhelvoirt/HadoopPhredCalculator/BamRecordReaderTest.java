@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * BamRecordReaderTest
+ *
+ * Tests the decoding of binary BAM records to fastq reads.
+ *
+ * @author Wout van Helvoirt
+ */
+public class BamRecordReaderTest {
+
+    /** Directory with the BAM file. */
+    private File directory;
+
+    /**
+     * Creates the directory for the BAM files.
+     *
+     * @throws IOException When the directory can not be created.
+     */
+    @Before
+    public void setUp()
+            throws IOException {
+
+        this.directory = Files.createTempDirectory("BamRecordReaderTest").toFile();
+    }
+
+    /**
+     * Removes the BAM files.
+     */
+    @After
+    public void tearDown() {
+        FileUtil.fullyDelete(this.directory);
+    }
+
+    /**
+     * Primary reads with qualities are decoded from 4 bit bases, reverse strand reads are turned back and the others
+     * are skipped. The header and the records are in separate gzip members like BGZF blocks.
+     *
+     * @throws Exception When the file can not be written or read.
+     */
+    @Test
+    public void decodesPrimaryReads()
+            throws Exception {
+
+        File bam = new File(this.directory, "reads.bam");
+        try (OutputStream out = new FileOutputStream(bam)) {
+            out.write(gzip(header()));
+            out.write(gzip(concat(
+                    record("r1", 0, 1, "ACGTA", new byte[]{40, 40, 2, 20, 30}),
+                    record("r2", 16, 1, "ACG", new byte[]{10, 20, 30}))));
+            out.write(gzip(concat(
+                    record("r3", 0x800, 1, "ACGT", new byte[]{40, 40, 40, 40}),
+                    record("r4", 4, 0, "ACGT", new byte[]{-1, -1, -1, -1}),
+                    record("r5", 4, 0, "NTGCA", new byte[]{0, 1, 2, 3, 4}))));
+        }
+        assertEquals("@r1\nACGTA\n+\nII#5?\n@r2\nCGT\n+\n?5+\n@r5\nNTGCA\n+\n!\"#$%\n", read(bam, 33));
+    }
+
+    /**
+     * A file that does not start with the BAM magic string is rejected.
+     *
+     * @throws Exception When the file can not be written.
+     */
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles()
+            throws Exception {
+
+        File bam = new File(this.directory, "other.bam");
+        try (OutputStream out = new FileOutputStream(bam)) {
+            out.write(gzip("@HD\tVN:1.6\n".getBytes(StandardCharsets.US_ASCII)));
+        }
+        read(bam, 33);
+    }
+
+    /**
+     * Reads a whole BAM file and returns all values.
+     *
+     * @param bam       The BAM file.
+     * @param asciiBase The ascii base of the phred scores.
+     * @return String with the values.
+     * @throws Exception When the file can not be read.
+     */
+    private static String read(File bam, int asciiBase)
+            throws Exception {
+
+        Configuration conf = new Configuration();
+        conf.setInt("ascii.base", asciiBase);
+        StringBuilder values = new StringBuilder();
+        try (BamRecordReader reader = new BamRecordReader()) {
+            reader.initialize(new FileSplit(new Path(bam.toURI()), 0, bam.length(), null),
+                    new TaskAttemptContextImpl(conf, new TaskAttemptID()));
+            while (reader.nextKeyValue()) {
+                values.append(reader.getCurrentValue());
+            }
+        }
+        return values.toString();
+    }
+
+    /**
+     * Returns the BAM header with header text and one reference.
+     *
+     * @return byte array with the header.
+     */
+    private static byte[] header() {
+        byte[] text = "@HD\tVN:1.6\n@SQ\tSN:chr1\tLN:1000\n".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer header = ByteBuffer.allocate(4 + 4 + text.length + 4 + 4 + 5 + 4).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'B', 'A', 'M', 1}).putInt(text.length).put(text);
+        header.putInt(1).putInt(5).put("chr1\0".getBytes(StandardCharsets.US_ASCII)).putInt(1000);
+        return header.array();
+    }
+
+    /**
+     * Returns an alignment record with the given amount of cigar operations and an NM tag.
+     *
+     * @param name   The read name.
+     * @param flag   The flag of the alignment.
+     * @param cigars The amount of cigar operations.
+     * @param bases  The bases of the read.
+     * @param phred  The phred scores of the read, 0xff for none.
+     * @return byte array with the block size and the record.
+     */
+    private static byte[] record(String name, int flag, int cigars, String bases, byte[] phred) {
+        int length = bases.length();
+        int size = 32 + name.length() + 1 + 4 * cigars + (length + 1) / 2 + length + 4;
+        ByteBuffer record = ByteBuffer.allocate(4 + size).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(size).putInt(cigars == 0 ? -1 : 0).putInt(cigars == 0 ? -1 : 10);
+        record.put((byte) (name.length() + 1)).put((byte) 60).putShort((short) 0).putShort((short) cigars);
+        record.putShort((short) flag).putInt(length).putInt(-1).putInt(-1).putInt(0);
+        record.put((name + "\0").getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < cigars; i++) {
+            record.putInt(length << 4);
+        }
+        for (int i = 0; i < length; i += 2) {
+            int high = "=ACMGRSVTWYHKDBN".indexOf(bases.charAt(i));
+            int low = i + 1 < length ? "=ACMGRSVTWYHKDBN".indexOf(bases.charAt(i + 1)) : 0;
+            record.put((byte) (high << 4 | low));
+        }
+        record.put(phred);
+        record.put("NMc".getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+        return record.array();
+    }
+
+    /**
+     * Concatenates byte arrays.
+     *
+     * @param parts The byte arrays.
+     * @return byte array with all parts.
+     */
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            joined.write(part, 0, part.length);
+        }
+        return joined.toByteArray();
+    }
+
+    /**
+     * Compresses bytes as one gzip member.
+     *
+     * @param bytes The bytes to compress.
+     * @return byte array with the gzip member.
+     * @throws IOException When the bytes can not be compressed.
+     */
+    private static byte[] gzip(byte[] bytes)
+            throws IOException {
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CombineFastqInputFormatTest
+ *
+ * Tests combine mode on a directory tree with small fastq files of the same name.
+ *
+ * @author Wout van Helvoirt
+ */
+public class CombineFastqInputFormatTest {
+
+    /** Directory with the input and output. */
+    private File directory;
+    /** First fastq file, with one duplicate read. */
+    private File first;
+    /** Second fastq file with the same name in another directory. */
+    private File second;
+
+    /**
+     * Writes the fastq files.
+     *
+     * @throws IOException When a file can not be written.
+     */
+    @Before
+    public void setUp()
+            throws IOException {
+
+        this.directory = Files.createTempDirectory("CombineFastqInputFormatTest").toFile();
+        this.first = write(new File(this.directory, "in/s1/reads.fastq"),
+                "@r1\nACGT\n+\nhhhh\n@r2\nACGT\n+\nhhhh\n@r3\nCCGT\n+\nhhhh\n@r4\nGCGT\n+\nhhhh\n");
+        this.second = write(new File(this.directory, "in/s2/reads.fastq"),
+                "@r1\nTTTT\n+\nhhhh\n@r2\nTTTA\n+\nhhhh\n@r3\nTTAA\n+\nhhhh\n");
+    }
+
+    /**
+     * Removes the input and output.
+     */
+    @After
+    public void tearDown() {
+        FileUtil.fullyDelete(this.directory);
+    }
+
+    /**
+     * Files in several directories are read in one combined split and the duplication is reported per file.
+     *
+     * @throws Exception When the job fails.
+     */
+    @Test
+    public void attributesReadsPerFile()
+            throws Exception {
+
+        Configuration conf = new Configuration();
+        conf.set("fs.defaultFS", "file:///");
+        conf.set("mapreduce.framework.name", "local");
+        conf.set("input.files", new Path(new File(this.directory, "in").toURI()).toString() + "/*");
+        conf.set("output.dir", new Path(new File(this.directory, "out").toURI()).toString());
+        conf.setBoolean("combine.files", true);
+        Job job = ParallelPhredCalculator.createJob(conf);
+        assertEquals(1, new CombineFastqInputFormat().getSplits(job).size());
+        assertTrue(job.waitForCompletion(false));
+
+        List<String> lines = Files.readAllLines(
+                new File(this.directory, "out/PhredCalculator_duplication.fastqc").toPath(), StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList("file\ttotal_reads\testimated_distinct_reads\tduplication_percentage",
+                toFileKey(this.first) + "\t4\t3\t25.0", toFileKey(this.second) + "\t3\t3\t0.0"), lines);
+    }
+
+    /**
+     * Returns the key of a file in the duplication output.
+     *
+     * @param file The input file.
+     * @return String with the file key.
+     */
+    private static String toFileKey(File file) {
+        return ReadMapper.toFileKey(new Path(file.toURI()));
+    }
+
+    /**
+     * Writes text to a file, creating its directory.
+     *
+     * @param file The file to write.
+     * @param text The text to write.
+     * @return File that was written.
+     * @throws IOException When the file can not be written.
+     */
+    private static File write(File file, String text)
+            throws IOException {
+
+        Files.createDirectories(file.getParentFile().toPath());
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.US_ASCII));
+        }
+        return file;
+    }
+}
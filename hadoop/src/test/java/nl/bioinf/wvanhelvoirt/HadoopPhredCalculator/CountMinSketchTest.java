@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CountMinSketchTest
+ *
+ * Tests the estimates, merging and binary form of the CountMinSketch.
+ *
+ * @author Wout van Helvoirt
+ */
+public class CountMinSketchTest {
+
+    /**
+     * Estimates never undercount and are exact without collisions.
+     */
+    @Test
+    public void estimatesNeverUndercount() {
+        CountMinSketch sketch = new CountMinSketch(4, 1024);
+        for (int i = 0; i < 1000; i++) {
+            for (int j = 0; j <= i % 10; j++) {
+                sketch.add(SequenceHash.hash64("item" + i));
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(sketch.estimate(SequenceHash.hash64("item" + i)) >= i % 10 + 1);
+        }
+        assertEquals(5500, sketch.getTotal());
+
+        CountMinSketch wide = new CountMinSketch(4, 1 << 16);
+        wide.add(SequenceHash.hash64("a"));
+        wide.add(SequenceHash.hash64("a"));
+        assertEquals(2, wide.estimate(SequenceHash.hash64("a")));
+        assertEquals(0, wide.estimate(SequenceHash.hash64("b")));
+    }
+
+    /**
+     * A merged sketch equals a sketch that counted all items.
+     */
+    @Test
+    public void mergeAddsCounters() {
+        CountMinSketch first = new CountMinSketch(3, 64);
+        CountMinSketch second = new CountMinSketch(3, 64);
+        CountMinSketch all = new CountMinSketch(3, 64);
+        for (int i = 0; i < 200; i++) {
+            long hash = SequenceHash.hash64("item" + (i % 37));
+            (i % 2 == 0 ? first : second).add(hash);
+            all.add(hash);
+        }
+        first.merge(second);
+        assertEquals(all.getTotal(), first.getTotal());
+        for (int i = 0; i < 37; i++) {
+            long hash = SequenceHash.hash64("item" + i);
+            assertEquals(all.estimate(hash), first.estimate(hash));
+        }
+    }
+
+    /**
+     * Sketches of different dimensions can not be merged.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeRejectsOtherDimensions() {
+        new CountMinSketch(3, 64).merge(new CountMinSketch(3, 128));
+    }
+
+    /**
+     * The binary form restores all counters.
+     *
+     * @throws IOException When the sketch can not be written or read.
+     */
+    @Test
+    public void binaryRoundTrip()
+            throws IOException {
+
+        CountMinSketch sketch = new CountMinSketch(4, 256);
+        for (int i = 0; i < 500; i++) {
+            sketch.add(SequenceHash.hash64("item" + (i % 50)));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.write(new DataOutputStream(bytes));
+        CountMinSketch read = CountMinSketch.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(4, read.getDepth());
+        assertEquals(256, read.getWidth());
+        assertEquals(sketch.getTotal(), read.getTotal());
+        for (int i = 0; i < 50; i++) {
+            long hash = SequenceHash.hash64("item" + i);
+            assertEquals(sketch.estimate(hash), read.estimate(hash));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * FastaQualRecordReaderTest
+ *
+ * Tests the decoding of FASTA files with their QUAL file to fastq reads.
+ *
+ * @author Wout van Helvoirt
+ */
+public class FastaQualRecordReaderTest {
+
+    /** Directory with the FASTA and QUAL files. */
+    private File directory;
+
+    /**
+     * Creates the directory for the files.
+     *
+     * @throws IOException When the directory can not be created.
+     */
+    @Before
+    public void setUp()
+            throws IOException {
+
+        this.directory = Files.createTempDirectory("FastaQualRecordReaderTest").toFile();
+    }
+
+    /**
+     * Removes the files.
+     */
+    @After
+    public void tearDown() {
+        FileUtil.fullyDelete(this.directory);
+    }
+
+    /**
+     * Records spanning multiple lines are joined and matched by name, the QUAL file replaces the extension.
+     *
+     * @throws Exception When the files can not be written or read.
+     */
+    @Test
+    public void decodesMultiLineRecords()
+            throws Exception {
+
+        File fasta = this.write("reads.fasta", ">r1 first read\nACG\nTA\n\n>r2\nGGC\n");
+        this.write("reads.qual", ">r1 first read\n40 40\n 2  20 30\n>r2\n10\t20 30\n");
+        assertEquals("@r1\nACGTA\n+\nII#5?\n@r2\nGGC\n+\n+5?\n", read(fasta, 33));
+    }
+
+    /**
+     * The QUAL file may also have '.qual' appended to the FASTA file name.
+     *
+     * @throws Exception When the files can not be written or read.
+     */
+    @Test
+    public void findsAppendedQualFile()
+            throws Exception {
+
+        File fasta = this.write("reads.fa", ">r1\nACGT\n");
+        this.write("reads.fa.qual", ">r1\n0 10 20 30\n");
+        assertEquals("@r1\nACGT\n+\n@JT^\n", read(fasta, 64));
+    }
+
+    /**
+     * Records with different names in both files are rejected.
+     *
+     * @throws Exception When the files can not be written.
+     */
+    @Test(expected = IOException.class)
+    public void rejectsDifferentNames()
+            throws Exception {
+
+        File fasta = this.write("reads.fasta", ">r1\nACGT\n");
+        this.write("reads.qual", ">r2\n40 40 40 40\n");
+        read(fasta, 33);
+    }
+
+    /**
+     * Records with a different amount of bases and scores are rejected.
+     *
+     * @throws Exception When the files can not be written.
+     */
+    @Test(expected = IOException.class)
+    public void rejectsMissingScores()
+            throws Exception {
+
+        File fasta = this.write("reads.fasta", ">r1\nACGT\n");
+        this.write("reads.qual", ">r1\n40 40 40\n");
+        read(fasta, 33);
+    }
+
+    /**
+     * Writes a file in the directory.
+     *
+     * @param name     The name of the file.
+     * @param contents The contents of the file.
+     * @return File that was written.
+     * @throws IOException When the file can not be written.
+     */
+    private File write(String name, String contents)
+            throws IOException {
+
+        File file = new File(this.directory, name);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(contents.getBytes(StandardCharsets.US_ASCII));
+        }
+        return file;
+    }
+
+    /**
+     * Reads a whole FASTA file with its QUAL file and returns all values.
+     *
+     * @param fasta     The FASTA file.
+     * @param asciiBase The ascii base of the phred scores.
+     * @return String with the values.
+     * @throws Exception When the files can not be read.
+     */
+    private static String read(File fasta, int asciiBase)
+            throws Exception {
+
+        Configuration conf = new Configuration();
+        conf.setInt("ascii.base", asciiBase);
+        StringBuilder values = new StringBuilder();
+        try (FastaQualRecordReader reader = new FastaQualRecordReader()) {
+            reader.initialize(new FileSplit(new Path(fasta.toURI()), 0, fasta.length(), null),
+                    new TaskAttemptContextImpl(conf, new TaskAttemptID()));
+            while (reader.nextKeyValue()) {
+                values.append(reader.getCurrentValue());
+            }
+        }
+        return values.toString();
+    }
+}
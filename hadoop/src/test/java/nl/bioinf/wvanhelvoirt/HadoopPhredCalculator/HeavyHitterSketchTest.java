@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * HeavyHitterSketchTest
+ *
+ * Tests finding the most frequent items, merging and the binary form of the HeavyHitterSketch.
+ *
+ * @author Wout van Helvoirt
+ */
+public class HeavyHitterSketchTest {
+
+    /**
+     * Offers 'heavy0' to 'heavy4' many times, mixed with many unique items.
+     *
+     * @param sketch The sketch to offer to.
+     * @param seed   Distinguishes the unique items of different sketches.
+     */
+    private static void offerItems(HeavyHitterSketch sketch, int seed) {
+        for (int i = 0; i < 5000; i++) {
+            String unique = "unique" + seed + "_" + i;
+            sketch.offer(unique, 0, unique.length());
+            if (i % 10 == 0) {
+                String heavy = "heavy" + (i / 10) % 5;
+                sketch.offer(heavy, 0, heavy.length());
+            }
+        }
+    }
+
+    /**
+     * The frequent items are found and ranked above the unique items.
+     */
+    @Test
+    public void findsFrequentItems() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(4, 4096, 20);
+        offerItems(sketch, 0);
+        List<Map.Entry<String, Long>> top = sketch.getTop(5);
+        assertEquals(5, top.size());
+        for (Map.Entry<String, Long> entry : top) {
+            assertTrue(entry.getKey().startsWith("heavy"));
+            assertTrue(entry.getValue() >= 100);
+        }
+        assertEquals(5500, sketch.getTotal());
+    }
+
+    /**
+     * Only the given part of a sequence is counted.
+     */
+    @Test
+    public void offersSubsequence() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(4, 1024, 5);
+        sketch.offer("xxACGTxx", 2, 6);
+        sketch.offer("ACGT", 0, 4);
+        assertEquals("ACGT", sketch.getTop(1).get(0).getKey());
+        assertEquals(2L, (long) sketch.getTop(1).get(0).getValue());
+    }
+
+    /**
+     * Merging keeps items that are frequent over both sketches, within the capacity.
+     */
+    @Test
+    public void mergeRanksBothCandidates() {
+        HeavyHitterSketch first = new HeavyHitterSketch(4, 4096, 10);
+        HeavyHitterSketch second = new HeavyHitterSketch(4, 4096, 10);
+        offerItems(first, 1);
+        offerItems(second, 2);
+        for (int i = 0; i < 300; i++) {
+            second.offer("onlySecond", 0, "onlySecond".length());
+        }
+        first.merge(second);
+        List<Map.Entry<String, Long>> top = first.getTop(100);
+        assertEquals(10, top.size());
+        assertEquals("onlySecond", top.get(0).getKey());
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(top.get(i).getKey().startsWith("heavy"));
+            assertTrue(top.get(i).getValue() >= 200);
+        }
+        assertEquals(11300, first.getTotal());
+    }
+
+    /**
+     * The binary form restores the counters and candidates.
+     *
+     * @throws IOException When the sketch can not be written or read.
+     */
+    @Test
+    public void binaryRoundTrip()
+            throws IOException {
+
+        HeavyHitterSketch sketch = new HeavyHitterSketch(4, 2048, 15);
+        offerItems(sketch, 3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.write(new DataOutputStream(bytes));
+        HeavyHitterSketch read = new HeavyHitterSketch();
+        read.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(sketch.getTotal(), read.getTotal());
+        assertEquals(sketch.getTop(15), read.getTop(15));
+    }
+}
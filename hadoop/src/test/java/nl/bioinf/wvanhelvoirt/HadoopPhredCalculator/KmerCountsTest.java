@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * KmerCountsTest
+ *
+ * Tests the exact counting, ranking, merging and binary form of the KmerCounts.
+ *
+ * @author Wout van Helvoirt
+ */
+public class KmerCountsTest {
+
+    /**
+     * Creates random reads of 100 bases with an N now and then.
+     *
+     * @param amount The amount of reads.
+     * @param seed   The seed of the random generator.
+     * @return String array with the reads.
+     */
+    private static String[] randomReads(int amount, long seed) {
+        Random random = new Random(seed);
+        String[] reads = new String[amount];
+        for (int i = 0; i < amount; i++) {
+            char[] read = new char[100];
+            for (int j = 0; j < read.length; j++) {
+                read[j] = random.nextInt(200) == 0 ? 'N' : "ACGT".charAt(random.nextInt(4));
+            }
+            reads[i] = new String(read);
+        }
+        return reads;
+    }
+
+    /**
+     * Every k-mer without an N is counted exactly, also where a sketch of the same size would collide.
+     */
+    @Test
+    public void countsExactly() {
+        KmerCounts counts = new KmerCounts(7);
+        Map<String, Long> expected = new HashMap<>();
+        long total = 0;
+        for (String read : randomReads(8000, 1)) {
+            counts.add(read);
+            for (int i = 0; i + 7 <= read.length(); i++) {
+                String kmer = read.substring(i, i + 7);
+                if (!kmer.contains("N")) {
+                    expected.put(kmer, expected.containsKey(kmer) ? expected.get(kmer) + 1 : 1);
+                    total++;
+                }
+            }
+        }
+        assertEquals(total, counts.getTotal());
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), (long) entry.getValue(), counts.getCount(entry.getKey()));
+        }
+
+        // The top k-mers are the ones with the highest exact counts.
+        List<Map.Entry<String, Long>> top = counts.getTop(10);
+        assertEquals(10, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(expected.get(top.get(i).getKey()), top.get(i).getValue());
+            if (i > 0) {
+                assertEquals(true, top.get(i - 1).getValue() >= top.get(i).getValue());
+            }
+        }
+        for (long count : expected.values()) {
+            assertEquals(true, count <= top.get(0).getValue());
+        }
+    }
+
+    /**
+     * K-mers with other bases are skipped, lower case bases are counted.
+     */
+    @Test
+    public void skipsUnknownBases() {
+        KmerCounts counts = new KmerCounts(3);
+        counts.add("ACGNACGxacgt");
+        assertEquals(4, counts.getTotal());
+        assertEquals(3, counts.getCount("ACG"));
+        assertEquals(1, counts.getCount("CGT"));
+        assertEquals(0, counts.getCount("ACN"));
+        assertEquals("ACG", counts.getTop(5).get(0).getKey());
+        assertEquals(2, counts.getTop(5).size());
+    }
+
+    /**
+     * Merged counts equal the counts of all reads.
+     */
+    @Test
+    public void mergeEqualsUnion() {
+        KmerCounts first = new KmerCounts(5);
+        KmerCounts second = new KmerCounts(5);
+        KmerCounts all = new KmerCounts(5);
+        String[] reads = randomReads(200, 2);
+        for (int i = 0; i < reads.length; i++) {
+            (i % 2 == 0 ? first : second).add(reads[i]);
+            all.add(reads[i]);
+        }
+        first.merge(second);
+        assertEquals(all.getTotal(), first.getTotal());
+        assertEquals(all.getTop(50), first.getTop(50));
+    }
+
+    /**
+     * Counts of different k can not be merged.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeRejectsOtherK() {
+        new KmerCounts(7).merge(new KmerCounts(6));
+    }
+
+    /**
+     * K-mers longer than MAX_K are not counted exactly.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLongKmers() {
+        new KmerCounts(KmerCounts.MAX_K + 1);
+    }
+
+    /**
+     * The binary form restores all counts.
+     *
+     * @throws IOException When the counts can not be written or read.
+     */
+    @Test
+    public void writeReadRoundTrip()
+            throws IOException {
+
+        KmerCounts counts = new KmerCounts(KmerCounts.MAX_K);
+        for (String read : randomReads(100, 3)) {
+            counts.add(read);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        counts.write(new DataOutputStream(bytes));
+        KmerCounts read = new KmerCounts();
+        read.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(counts.getTotal(), read.getTotal());
+        assertEquals(counts.getTop(100), read.getTop(100));
+    }
+}
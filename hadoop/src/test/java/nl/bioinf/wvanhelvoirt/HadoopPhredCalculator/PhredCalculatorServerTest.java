@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PhredCalculatorServerTest
+ *
+ * Tests the PhredCalculatorServer by submitting a small fastq file to the local job runner.
+ *
+ * @author Wout van Helvoirt
+ */
+public class PhredCalculatorServerTest {
+
+    /** Directory with the input, output and Hadoop temporary files. */
+    private File directory;
+    /** The running server. */
+    private HttpServer server;
+    /** The server under test. */
+    private PhredCalculatorServer calculator;
+
+    /**
+     * Writes a small fastq file and starts a server on a free port.
+     *
+     * @throws IOException When the file can not be written or the server can not be started.
+     */
+    @Before
+    public void setUp()
+            throws IOException {
+
+        this.directory = Files.createTempDirectory("PhredCalculatorServerTest").toFile();
+        try (OutputStream out = new FileOutputStream(new File(this.directory, "reads.fastq"))) {
+            for (int i = 0; i < 20; i++) {
+                out.write(("@read" + i + "\nACGTAC\n+\nIIIIHH\n").getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        Configuration conf = new Configuration();
+        conf.set("fs.defaultFS", "file:///");
+        conf.set("mapreduce.framework.name", "local");
+        conf.set("hadoop.tmp.dir", new File(this.directory, "hadoop").getAbsolutePath());
+        conf.set("server.port", "0");
+        conf.set("server.staging.dir", new File(this.directory, "staging").getAbsolutePath());
+        conf.set("server.output.dir", new File(this.directory, "output").getAbsolutePath());
+        this.calculator = new PhredCalculatorServer();
+        this.calculator.setConf(conf);
+        this.server = this.calculator.start();
+    }
+
+    /**
+     * Stops the server and removes the files.
+     */
+    @After
+    public void tearDown() {
+        this.calculator.stop(0);
+        FileUtil.fullyDelete(this.directory);
+    }
+
+    /**
+     * A small fastq file runs in the local job runner and returns the averages, which can be requested again by id.
+     *
+     * @throws IOException When a request fails.
+     */
+    @Test
+    public void submitsSmallFastqLocally()
+            throws IOException {
+
+        String input = new File(this.directory, "reads.fastq").getAbsolutePath();
+        Response submitted = this.request("POST", "/jobs", "input.files=" + URLEncoder.encode(input, "UTF-8")
+                + "&ascii.base=33");
+        assertEquals(200, submitted.status);
+        assertTrue(submitted.body.contains("state\tSUCCEEDED"));
+        assertTrue(submitted.body.contains("base_position"));
+        assertTrue(submitted.body.contains("output_dir\t" + new File(this.directory, "output").getAbsolutePath()));
+
+        // The job can be requested by its id until it is evicted.
+        String jobId = submitted.body.substring(7, submitted.body.indexOf('\n'));
+        Response status = this.request("GET", "/jobs/" + jobId, null);
+        assertEquals(200, status.status);
+        assertTrue(status.body.contains("state\tSUCCEEDED"));
+        String outputDir = status.body.split("output_dir\t")[1].split("\n")[0];
+        assertTrue(new File(outputDir, "PhredCalculator.fastqc").isFile());
+
+        // A finished job is removed with its output once the ttl passed.
+        this.calculator.evictFinishedJobs(60000);
+        assertEquals(1, this.calculator.getJobCount());
+        this.calculator.evictFinishedJobs(0);
+        assertEquals(0, this.calculator.getJobCount());
+        assertFalse(new File(outputDir).exists());
+        assertEquals(404, this.request("GET", "/jobs/" + jobId, null).status);
+    }
+
+    /**
+     * Options outside the allowlist, like the output directory, are rejected before anything is submitted.
+     *
+     * @throws IOException When a request fails.
+     */
+    @Test
+    public void rejectsOtherOptions()
+            throws IOException {
+
+        File victim = new File(this.directory, "victim");
+        assertTrue(victim.mkdir());
+        String input = new File(this.directory, "reads.fastq").getAbsolutePath();
+        Response response = this.request("POST", "/jobs", "input.files=" + URLEncoder.encode(input, "UTF-8")
+                + "&output.dir=" + URLEncoder.encode(victim.getAbsolutePath(), "UTF-8"));
+        assertEquals(400, response.status);
+        assertTrue(victim.isDirectory());
+        assertEquals(400, this.request("POST", "/jobs", "input.files=" + URLEncoder.encode(input, "UTF-8")
+                + "&mapreduce.framework.name=yarn").status);
+        assertEquals(0, this.calculator.getJobCount());
+    }
+
+    /**
+     * A stopped server no longer accepts requests and can be stopped again.
+     *
+     * @throws IOException When the request fails in another way.
+     */
+    @Test(expected = ConnectException.class)
+    public void stopClosesServer()
+            throws IOException {
+
+        int port = this.server.getAddress().getPort();
+        this.calculator.stop(0);
+        this.calculator.stop(0);
+        new URL("http://127.0.0.1:" + port + "/jobs/none").openConnection().getInputStream();
+    }
+
+    /**
+     * Sends a request to the server.
+     *
+     * @param method The HTTP method.
+     * @param path   The path of the request.
+     * @param form   The url encoded form body, may be null.
+     * @return Response with the status and body.
+     * @throws IOException When the request fails.
+     */
+    private Response request(String method, String path, String form)
+            throws IOException {
+
+        URL url = new URL("http://127.0.0.1:" + this.server.getAddress().getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        if (form != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(form.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            IOUtils.copyBytes(in, body, 4096, false);
+        }
+        return new Response(status, new String(body.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Response
+     *
+     * Status and body of a response.
+     */
+    private static final class Response {
+
+        /** The HTTP status. */
+        private final int status;
+        /** The body of the response. */
+        private final String body;
+
+        /**
+         * Constructor that sets the status and body.
+         *
+         * @param status The HTTP status.
+         * @param body   The body of the response.
+         */
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
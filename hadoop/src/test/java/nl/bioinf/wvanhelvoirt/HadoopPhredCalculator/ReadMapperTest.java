@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import nl.bioinf.wvanhelvoirt.HadoopPhredCalculator.core.QualityProfile;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * ReadMapperTest
+ *
+ * Tests the helpers of the ReadMapper and the mapping of read values.
+ *
+ * @author Wout van Helvoirt
+ */
+public class ReadMapperTest {
+
+    /**
+     * Files with the same name in different directories get their own duplication key.
+     */
+    @Test
+    public void fileKeyKeepsDirectories() {
+        String first = ReadMapper.toFileKey(new Path("hdfs://namenode:8020/runs/s1/f00.fastq"));
+        String second = ReadMapper.toFileKey(new Path("hdfs://namenode:8020/runs/s2/f00.fastq"));
+        assertEquals("/runs/s1/f00.fastq", first);
+        assertNotEquals(first, second);
+        assertEquals("/runs/s1/f00.fastq", ReadMapper.toFileKey(new Path("file:/runs/s1/f00.fastq")));
+    }
+
+    /**
+     * An incomplete last record in a value is left out instead of failing the task.
+     *
+     * @throws Exception When the mapper fails.
+     */
+    @Test
+    public void skipsIncompleteLastRecord()
+            throws Exception {
+
+        Configuration conf = new Configuration();
+        conf.setBoolean("overrepresented.enabled", true);
+        Map<String, Writable> output = map(conf, "@r1\nACGT\n+\nhhhh\n@r2\nACGT\n+\n");
+        QualityProfile profile = ((ProfileWritable) output.get(ReadMapper.PHRED_KEY)).get();
+        assertEquals(1, profile.getReads());
+        assertEquals(40 * 4, profile.getSum(0) + profile.getSum(1) + profile.getSum(2) + profile.getSum(3));
+        assertEquals(1, ((DuplicationWritable) output.get(ReadMapper.DUPLICATION_KEY)).getReads());
+        assertEquals(1, ((HeavyHitterSketch) output.get(ReadMapper.SEQUENCES_KEY)).getTotal());
+    }
+
+    /**
+     * The phred scores are added without the sketches, reads of which the lines differ in length are left out.
+     *
+     * @throws Exception When the mapper fails.
+     */
+    @Test
+    public void addsPhredScoresWithoutSketches()
+            throws Exception {
+
+        Configuration conf = new Configuration();
+        conf.setBoolean("overrepresented.enabled", false);
+        conf.setBoolean("duplication.enabled", false);
+        Map<String, Writable> output = map(conf, "@r1\nACGT\n+\nhhhh\n@r2\nACG\n+\nhhhh\n@r3\nAC\n+\nij\n");
+        QualityProfile profile = ((ProfileWritable) output.get(ReadMapper.PHRED_KEY)).get();
+        assertEquals(2, profile.getReads());
+        assertEquals(40 + 41, profile.getSum(0));
+        assertEquals(1, output.size());
+    }
+
+    /**
+     * Runs a ReadMapper on one value of a fastq file and returns the last value written per key.
+     *
+     * @param conf  The Configuration of the task.
+     * @param value The fastq records of the value.
+     * @return Map with the Writable wrapped in the MetricWritable of each key.
+     * @throws Exception When the mapper fails.
+     */
+    private static Map<String, Writable> map(Configuration conf, final String value)
+            throws Exception {
+
+        final Map<String, Writable> output = new HashMap<>();
+        RecordReader<LongWritable, Text> reader = new RecordReader<LongWritable, Text>() {
+
+            /** Whether the value was returned. */
+            private boolean done;
+
+            @Override
+            public void initialize(InputSplit split, TaskAttemptContext context) {
+            }
+
+            @Override
+            public boolean nextKeyValue() {
+                boolean next = !this.done;
+                this.done = true;
+                return next;
+            }
+
+            @Override
+            public LongWritable getCurrentKey() {
+                return new LongWritable(0);
+            }
+
+            @Override
+            public Text getCurrentValue() {
+                return new Text(value);
+            }
+
+            @Override
+            public float getProgress() {
+                return this.done ? 1 : 0;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        RecordWriter<Text, MetricWritable> writer = new RecordWriter<Text, MetricWritable>() {
+
+            @Override
+            public void write(Text key, MetricWritable metric) {
+                output.put(key.toString(), metric.get());
+            }
+
+            @Override
+            public void close(TaskAttemptContext context) {
+            }
+        };
+        new ReadMapper().run(new WrappedMapper<LongWritable, Text, Text, MetricWritable>().getMapContext(
+                new MapContextImpl<>(conf, new TaskAttemptID(), reader, writer, null,
+                        new TaskAttemptContextImpl.DummyReporter(), new FileSplit(new Path("/runs/s1/f00.fastq"), 0,
+                        value.length(), null))));
+        return output;
+    }
+}
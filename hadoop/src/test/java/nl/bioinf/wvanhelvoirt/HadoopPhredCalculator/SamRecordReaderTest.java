@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SamRecordReaderTest
+ *
+ * Tests the decoding of SAM lines to fastq reads.
+ *
+ * @author Wout van Helvoirt
+ */
+public class SamRecordReaderTest {
+
+    /** SAM file with a header, a forward and a reverse read, a secondary alignment and a read without qualities. */
+    private static final String SAM = "@HD\tVN:1.6\n"
+            + "r1\t0\tchr1\t1\t60\t4M\t*\t0\t0\tACGT\tII#5\n"
+            + "r2\t16\tchr1\t5\t60\t4M\t*\t0\t0\tAACG\tABCD\n"
+            + "r3\t256\tchr1\t9\t0\t4M\t*\t0\t0\tACGT\tIIII\n"
+            + "r4\t4\t*\t0\t0\t*\t*\t0\t0\tACGT\t*\n"
+            + "r5\t4\t*\t0\t0\t*\t*\t0\t0\tTTGA\t!!+5\n";
+
+    /** Directory with the SAM file. */
+    private File directory;
+    /** The SAM file. */
+    private File sam;
+
+    /**
+     * Writes the SAM file.
+     *
+     * @throws IOException When the file can not be written.
+     */
+    @Before
+    public void setUp()
+            throws IOException {
+
+        this.directory = Files.createTempDirectory("SamRecordReaderTest").toFile();
+        this.sam = new File(this.directory, "reads.sam");
+        try (OutputStream out = new FileOutputStream(this.sam)) {
+            out.write(SAM.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Removes the SAM file.
+     */
+    @After
+    public void tearDown() {
+        FileUtil.fullyDelete(this.directory);
+    }
+
+    /**
+     * Primary reads with qualities are decoded, reverse strand reads are turned back and the others are skipped.
+     *
+     * @throws Exception When the file can not be read.
+     */
+    @Test
+    public void decodesPrimaryReads()
+            throws Exception {
+
+        assertEquals("@r1\nACGT\n+\nII#5\n@r2\nCGTT\n+\nDCBA\n@r5\nTTGA\n+\n!!+5\n",
+                this.read(0, this.sam.length(), 33, 2000));
+    }
+
+    /**
+     * The phred scores are encoded with the ascii base of the job.
+     *
+     * @throws Exception When the file can not be read.
+     */
+    @Test
+    public void encodesWithAsciiBase()
+            throws Exception {
+
+        assertEquals("@r1\nACGT\n+\nhhBT\n@r2\nCGTT\n+\ncba`\n@r5\nTTGA\n+\n@@JT\n",
+                this.read(0, this.sam.length(), 64, 2000));
+    }
+
+    /**
+     * Splits at any byte together return every read once.
+     *
+     * @throws Exception When the file can not be read.
+     */
+    @Test
+    public void splitsReturnEveryReadOnce()
+            throws Exception {
+
+        String whole = this.read(0, this.sam.length(), 33, 1);
+        for (long boundary = 1; boundary < this.sam.length(); boundary++) {
+            assertEquals(whole, this.read(0, boundary, 33, 1)
+                    + this.read(boundary, this.sam.length() - boundary, 33, 1));
+        }
+    }
+
+    /**
+     * Reads a part of the SAM file and returns all values.
+     *
+     * @param start          The start of the split.
+     * @param length         The length of the split.
+     * @param asciiBase      The ascii base of the phred scores.
+     * @param readsPerRecord The maximum amount of reads per value.
+     * @return String with the values.
+     * @throws Exception When the file can not be read.
+     */
+    private String read(long start, long length, int asciiBase, int readsPerRecord)
+            throws Exception {
+
+        Configuration conf = new Configuration();
+        conf.setInt("ascii.base", asciiBase);
+        conf.setInt("reads.per.record", readsPerRecord);
+        StringBuilder values = new StringBuilder();
+        try (SamRecordReader reader = new SamRecordReader()) {
+            reader.initialize(new FileSplit(new Path(this.sam.toURI()), start, length, null),
+                    new TaskAttemptContextImpl(conf, new TaskAttemptID()));
+            while (reader.nextKeyValue()) {
+                values.append(reader.getCurrentValue());
+            }
+        }
+        return values.toString();
+    }
+}
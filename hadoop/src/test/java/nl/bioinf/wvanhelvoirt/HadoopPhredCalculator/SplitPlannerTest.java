@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SplitPlannerTest
+ *
+ * Tests the planning of the split size against files on the local filesystem with a small block size.
+ *
+ * @author Wout van Helvoirt
+ */
+public class SplitPlannerTest {
+
+    /** Block size of the local filesystem. */
+    private static final long BLOCK = 1024;
+    /** Amount of reads in the input file. */
+    private static final int READS = 1000;
+    /** Bytes of each fastq read. */
+    private static final int READ_BYTES = 16;
+
+    /** Directory with the input files. */
+    private File directory;
+
+    /**
+     * Writes a fastq file of READS reads of READ_BYTES bytes and a SAM file of READS lines.
+     *
+     * @throws IOException When a file can not be written.
+     */
+    @Before
+    public void setUp()
+            throws IOException {
+
+        this.directory = Files.createTempDirectory("SplitPlannerTest").toFile();
+        StringBuilder fastq = new StringBuilder();
+        StringBuilder sam = new StringBuilder();
+        for (int i = 0; i < READS; i++) {
+            fastq.append(String.format("@%02d\nACGT\n+\nIIII\n", i % 100));
+            sam.append(String.format("%02d\t4\t*\t0\t0\tA\tI\n", i % 100));
+        }
+        write(new File(this.directory, "reads.fastq"), fastq.toString());
+        write(new File(this.directory, "reads.sam"), sam.toString());
+    }
+
+    /**
+     * Removes the input files.
+     */
+    @After
+    public void tearDown() {
+        FileUtil.fullyDelete(this.directory);
+    }
+
+    /**
+     * A split smaller than one block is rounded up to one block.
+     *
+     * @throws IOException When the input can not be read.
+     */
+    @Test
+    public void roundsUpToOneBlock()
+            throws IOException {
+
+        // One wave over 100 vcores would be 160 bytes per split.
+        Configuration conf = this.createConfiguration();
+        conf.setInt("split.vcores", 100);
+        SplitPlanner planner = this.plan(conf);
+        assertEquals(BLOCK, planner.getSplitBytes());
+        assertEquals(BLOCK / READ_BYTES, planner.getReadsPerMap());
+    }
+
+    /**
+     * A split larger than one block is rounded down to whole blocks.
+     *
+     * @throws IOException When the input can not be read.
+     */
+    @Test
+    public void roundsDownToWholeBlocks()
+            throws IOException {
+
+        // One wave over 2 vcores would be 8000 bytes per split.
+        Configuration conf = this.createConfiguration();
+        conf.setInt("split.vcores", 2);
+        SplitPlanner planner = this.plan(conf);
+        assertEquals(7 * BLOCK, planner.getSplitBytes());
+        assertEquals(7 * BLOCK / READ_BYTES, planner.getReadsPerMap());
+    }
+
+    /**
+     * The target task duration limits the split when it is smaller than one wave over the vcores.
+     *
+     * @throws IOException When the input can not be read.
+     */
+    @Test
+    public void selectsDurationBelowWave()
+            throws IOException {
+
+        // One wave would be 8000 bytes per split, the target duration gives 3 blocks.
+        Configuration conf = this.createConfiguration();
+        conf.setInt("split.vcores", 2);
+        conf.setLong("split.bytes.per.second", BLOCK);
+        conf.setInt("split.target.seconds", 3);
+        assertEquals(3 * BLOCK, this.plan(conf).getSplitBytes());
+
+        // With a longer target duration the wave limits the split again.
+        conf.setInt("split.target.seconds", 10);
+        assertEquals(7 * BLOCK, this.plan(conf).getSplitBytes());
+    }
+
+    /**
+     * An explicit amount of reads per mapper overrides the plan, also below one block.
+     *
+     * @throws IOException When the input can not be read.
+     */
+    @Test
+    public void readsPerMapOverridesPlan()
+            throws IOException {
+
+        Configuration conf = this.createConfiguration();
+        conf.setInt("split.vcores", 2);
+        conf.setInt("reads.per.map", 10);
+        SplitPlanner planner = this.plan(conf);
+        assertEquals(10, planner.getReadsPerMap());
+        assertEquals(10 * READ_BYTES, planner.getSplitBytes());
+    }
+
+    /**
+     * SAM files are split by the reads per mapper given by the user, even when that is smaller than one block.
+     *
+     * @throws IOException When the input can not be read.
+     */
+    @Test
+    public void splitsSamByReadsPerMap()
+            throws IOException {
+
+        Configuration conf = this.createConfiguration();
+        conf.set("input.files", new Path(new File(this.directory, "reads.sam").toURI()).toString());
+        conf.set("input.format", "sam");
+        conf.set("output.dir", new Path(new File(this.directory, "output").toURI()).toString());
+        conf.setInt("reads.per.map", 20);
+        Job job = ParallelPhredCalculator.createJob(conf);
+        assertEquals(READS / 20, new SamInputFormat().getSplits(job).size());
+    }
+
+    /**
+     * Creates a configuration for the local filesystem with a block size of BLOCK bytes.
+     *
+     * @return Configuration for the planner.
+     */
+    private Configuration createConfiguration() {
+        Configuration conf = new Configuration();
+        conf.set("fs.defaultFS", "file:///");
+        conf.set("mapreduce.framework.name", "local");
+        conf.setLong("fs.local.block.size", BLOCK);
+
+        // Cached filesystems keep the block size of the configuration they were created with.
+        conf.setBoolean("fs.file.impl.disable.cache", true);
+        return conf;
+    }
+
+    /**
+     * Plans the splits for the fastq file.
+     *
+     * @param conf The Configuration for the planner.
+     * @return SplitPlanner with the plan.
+     * @throws IOException When the input can not be read.
+     */
+    private SplitPlanner plan(Configuration conf)
+            throws IOException {
+
+        SplitPlanner planner = new SplitPlanner(conf);
+        planner.plan(new Path(this.directory.toURI()), new FastqPathFilter());
+        return planner;
+    }
+
+    /**
+     * Writes text to a file.
+     *
+     * @param file The file to write.
+     * @param text The text to write.
+     * @throws IOException When the file can not be written.
+     */
+    private static void write(File file, String text)
+            throws IOException {
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2016 Wout van Helvoirt
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nl.bioinf.wvanhelvoirt.HadoopPhredCalculator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * StreamingPhredCalculatorTest
+ *
+ * Tests that the StreamingPhredCalculator continues from its published state and leaves no temporary files.
+ *
+ * @author Wout van Helvoirt
+ */
+public class StreamingPhredCalculatorTest {
+
+    /** Directory with the input and output. */
+    private File directory;
+
+    /**
+     * Creates the input directory.
+     *
+     * @throws IOException When the directory can not be created.
+     */
+    @Before
+    public void setUp()
+            throws IOException {
+
+        this.directory = Files.createTempDirectory("StreamingPhredCalculatorTest").toFile();
+        new File(this.directory, "input").mkdir();
+    }
+
+    /**
+     * Removes the input and output.
+     */
+    @After
+    public void tearDown() {
+        FileUtil.fullyDelete(this.directory);
+    }
+
+    /**
+     * A restarted run only adds the reads appended since the previous run, including a read that was incomplete.
+     *
+     * @throws Exception When the files can not be written or read.
+     */
+    @Test
+    public void continuesAfterRestart()
+            throws Exception {
+
+        this.append("@r1\nACGT\n+\nIIII\n@r2\nAC");
+        this.run();
+        assertEquals(Arrays.asList("base_position\taverage_phred_score", "1\t40.0", "2\t40.0", "3\t40.0", "4\t40.0"),
+                this.readOutput());
+
+        this.append("GT\n+\n++++\n");
+        this.run();
+        this.run();
+        assertEquals(Arrays.asList("base_position\taverage_phred_score", "1\t25.0", "2\t25.0", "3\t25.0", "4\t25.0"),
+                this.readOutput());
+    }
+
+    /**
+     * Only the profile and the state are left in the output directory.
+     *
+     * @throws Exception When the files can not be written or read.
+     */
+    @Test
+    public void leavesNoTemporaryFiles()
+            throws Exception {
+
+        this.append("@r1\nACGT\n+\nIIII\n");
+        this.run();
+        String[] names = new File(this.directory, "output").list();
+        Arrays.sort(names);
+        assertEquals(Arrays.asList(StreamingPhredCalculator.OUTPUT_NAME, StreamingPhredCalculator.STATE_NAME),
+                Arrays.asList(names));
+    }
+
+    /**
+     * Runs one poll over the input directory.
+     *
+     * @throws Exception When the poll fails.
+     */
+    private void run()
+            throws Exception {
+
+        Configuration conf = new Configuration();
+        conf.set("fs.defaultFS", "file:///");
+        conf.set("input.files", new File(this.directory, "input").getAbsolutePath());
+        conf.set("output.dir", new File(this.directory, "output").getAbsolutePath());
+        conf.setInt("ascii.base", 33);
+        conf.setInt("streaming.iterations", 1);
+        conf.setLong("streaming.interval.ms", 0);
+        assertEquals(0, ToolRunner.run(conf, new StreamingPhredCalculator(), new String[0]));
+    }
+
+    /**
+     * Appends text to the fastq file in the input directory.
+     *
+     * @param text The text to append.
+     * @throws IOException When the file can not be written.
+     */
+    private void append(String text)
+            throws IOException {
+
+        try (OutputStream out = new FileOutputStream(new File(this.directory, "input/reads.fastq"), true)) {
+            out.write(text.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Reads the published profile.
+     *
+     * @return List with the lines of the profile.
+     * @throws IOException When the profile can not be read.
+     */
+    private List<String> readOutput()
+            throws IOException {
+
+        return Files.readAllLines(new File(this.directory, "output/" + StreamingPhredCalculator.OUTPUT_NAME).toPath(),
+                StandardCharsets.US_ASCII);
+    }
+}